@@ -5,6 +5,8 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import javafx.scene.transform.Rotate;
 import models.Config;
+import models.PipeQueue;
+import models.map.MapSnapshot;
 import models.map.cells.Cell;
 import models.map.cells.FillableCell;
 import models.map.cells.TerminationCell;
@@ -22,6 +24,10 @@ public class Renderer {
      * Padding between two tiles in a queue.
      */
     private static final int QUEUE_TILE_PADDING = 8;
+    /**
+     * Images of the pipes, indexed by {@code shape.ordinal() * 2 + (filled ? 1 : 0)}.
+     */
+    private static final CellImage[] PIPE_IMAGES = createPipeImages();
 
     /**
      * An image of a cell, with support for rotated images.
@@ -92,28 +98,82 @@ public class Renderer {
         for(int i=0; i<map.length; i++){
             for(int j=0; j<map[0].length; j++) {
                 //System.out.print(map[i][j].toSingleChar());
-                CellImage temp = map[i][j].getImageRep();
-                if(map[i][j] instanceof FillableCell){
-                    FillableCell fillableCell = (FillableCell)map[i][j];
-                    if(!fillableCell.getPipe().isEmpty()){
-                        temp = fillableCell.getPipe().get().getImageRep();
-                    }
-                }
+                CellImage temp = imageOf(map[i][j]);
                 drawRotatedImage(gc, temp.image, temp.rotation,j*Config.TILE_SIZE,i*Config.TILE_SIZE);
             }
             //System.out.println();
         }
     }
 
+    /**
+     * Renders a map snapshot into a {@link Canvas}.
+     *
+     * <p>
+     * The images are looked up from the codes of the snapshot, so this does not create any cells.
+     * </p>
+     *
+     * @param canvas Canvas to render to.
+     * @param map    Snapshot of the map to render.
+     */
+    public static void renderMap(@NotNull Canvas canvas, @NotNull MapSnapshot map) {
+        canvas.setWidth(Config.TILE_SIZE*map.getCols());
+        canvas.setHeight(Config.TILE_SIZE*map.getRows());
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        for(int i=0; i<map.getRows(); i++){
+            for(int j=0; j<map.getCols(); j++) {
+                CellImage temp = map.getImage(i, j);
+                drawRotatedImage(gc, temp.image, temp.rotation,j*Config.TILE_SIZE,i*Config.TILE_SIZE);
+            }
+        }
+    }
+
+    /**
+     * @param cell Cell to render.
+     * @return Image of the pipe in the cell if it has one, otherwise the image of the cell.
+     */
+    @NotNull
+    private static CellImage imageOf(@NotNull Cell cell) {
+        if(cell instanceof FillableCell){
+            FillableCell fillableCell = (FillableCell)cell;
+            if(fillableCell.getShape() != null){
+                return pipeImage(fillableCell.getShape(), fillableCell.isFilled());
+            }
+        }
+        return cell.getImageRep();
+    }
+
+    /**
+     * @param shape  Shape of a pipe.
+     * @param filled Whether the pipe is filled.
+     * @return Image of the pipe. The same instance is returned for each shape and state.
+     */
+    @NotNull
+    public static CellImage pipeImage(@NotNull Pipe.Shape shape, boolean filled) {
+        return PIPE_IMAGES[shape.ordinal() * 2 + (filled ? 1 : 0)];
+    }
+
+    @NotNull
+    private static CellImage[] createPipeImages() {
+        final var shapes = Pipe.Shape.values();
+        final var images = new CellImage[shapes.length * 2];
+        for (var shape : shapes) {
+            final var pipe = new Pipe(shape);
+            images[shape.ordinal() * 2] = pipe.getImageRep();
+            pipe.setFilled();
+            images[shape.ordinal() * 2 + 1] = pipe.getImageRep();
+        }
+        return images;
+    }
+
     /**
      * Renders a pipe queue into a {@link Canvas}.
      *
      * @param canvas    Canvas to render to.
-     * @param pipeQueue Pipe queue to render.
+     * @param pipeQueue Displayed pipes of a queue, at most {@link PipeQueue#VISIBLE_LENGTH}.
      */
     public static void renderQueue(@NotNull Canvas canvas, @NotNull List<Pipe> pipeQueue) {
         // TODO
-        canvas.setWidth((Config.TILE_SIZE + QUEUE_TILE_PADDING)*5 - QUEUE_TILE_PADDING*2);
+        canvas.setWidth((Config.TILE_SIZE + QUEUE_TILE_PADDING)*PipeQueue.VISIBLE_LENGTH - QUEUE_TILE_PADDING*2);
         canvas.setHeight(Config.TILE_SIZE + QUEUE_TILE_PADDING*2);
         GraphicsContext gc = canvas.getGraphicsContext2D();
         for(int i=0; i<pipeQueue.size(); i++){
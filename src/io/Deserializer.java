@@ -140,6 +140,12 @@ public class Deserializer {
     /**
      * Deserializes a map from a {@link String}.
      *
+     * <p>
+     * A map may contain several sources and sinks. Arrows on the border of the map are sinks and arrows elsewhere are
+     * sources, while the letters {@code 'U'}, {@code 'D'}, {@code 'L'} and {@code 'R'} are sinks at any position. See
+     * {@link Cell#fromChar(char, Coordinate, TerminationCell.Type)}.
+     * </p>
+     *
      * @param rows     Rows of the given map.
      * @param cols     Columns of the given map.
      * @param cellsRep String representation of the map, with rows delimited by {@code '\n'}.
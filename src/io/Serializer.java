@@ -1,13 +1,18 @@
 package io;
 
+import models.map.cells.Cell;
+import models.map.cells.TerminationCell;
+import models.pipes.Pipe;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.stream.Collectors;
 
 /**
  * A serializer for converting {@link GameProperties} into a map file.
@@ -32,20 +37,56 @@ public class Serializer {
      */
     public void serializeGameProp(@NotNull final GameProperties prop) throws IOException {
         // TODO
-        File outputFile = new File(path.toString());    //will throw fileNotFound exception
-        PrintWriter writer = new PrintWriter(outputFile);
-        writer.println(prop.rows);
-        writer.println(prop.cols);
-        writer.println(prop.delay);
+        try (var writer = Files.newBufferedWriter(path)) {
+            writeGameProp(prop, writer);
+        }
+    }
+
+    /**
+     * Serializes a {@link GameProperties} object into a writer, in the format of a map file.
+     *
+     * <p>
+     * The pipes of the level are written after the best record, if the level specifies them.
+     * </p>
+     *
+     * @param prop   {@link GameProperties} object to serialize.
+     * @param writer Writer to write to. It is neither flushed nor closed.
+     * @throws IOException if an I/O exception has occurred.
+     */
+    public static void writeGameProp(@NotNull final GameProperties prop, @NotNull final Writer writer)
+            throws IOException {
+        final var nl = System.lineSeparator();
+        writer.write(prop.rows + nl);
+        writer.write(prop.cols + nl);
+        writer.write(prop.delay + nl);
         for (int i = 0; i < prop.rows; i++) {
             for (int j = 0; j < prop.cols; j++) {
-                writer.print(prop.cells[i][j].toSerializedRep());
+                writer.write(serializeCell(prop.cells[i][j], prop.rows, prop.cols));
             }
-            writer.println();
+            writer.write(nl);
         }
         //initial best record is 3600s which is 1h, so is impossible to win without breaking this record
-        writer.println("Best Record: "+ 3600);
-        writer.close();
+        writer.write("Best Record: " + 3600 + nl);
+        if (prop.pipes != null && !prop.pipes.isEmpty()) {
+            writer.write(prop.pipes.stream().map(Pipe::toSerializedRep).collect(Collectors.joining(",")) + nl);
+        }
+    }
+
+    /**
+     * @param cell Cell to serialize.
+     * @param rows Number of rows of the map.
+     * @param cols Number of columns of the map.
+     * @return Serialized representation of the cell, which is parsed back into the same cell by {@link Deserializer}.
+     */
+    @NotNull
+    static String serializeCell(@NotNull Cell cell, int rows, int cols) {
+        if (cell instanceof TerminationCell) {
+            final int row = cell.coord.row;
+            final int col = cell.coord.col;
+            final boolean onBorder = row == 0 || row == rows - 1 || col == 0 || col == cols - 1;
+            return ((TerminationCell) cell).toSerializedRep(onBorder);
+        }
+        return cell.toSerializedRep();
     }
 
     /**
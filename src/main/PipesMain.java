@@ -3,6 +3,7 @@ package main;
 import controllers.SceneManager;
 import javafx.application.Application;
 import javafx.stage.Stage;
+import models.solver.SolverBenchmark;
 import textgame.Main;
 import views.panes.MainMenuPane;
 
@@ -25,6 +26,10 @@ public class PipesMain extends Application {
             final var txtArrayArgs = new String[]{};
             Main.main(txtArgs.toArray(txtArrayArgs));
 
+            System.exit(0);
+        } else if (args.length > 0 && args[0].equals("--solver-benchmark")) {
+            SolverBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+
             System.exit(0);
         } else {
             PipesMain.launch(args);
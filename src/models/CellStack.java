@@ -2,43 +2,87 @@ package models;
 
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import models.map.cells.FillableCell;
+import models.pipes.Pipe;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Class encapsulating an undo stack.
+ *
+ * <p>
+ * Each entry records the index of a cell in the map and the shape of the pipe placed into it, packed into a single
+ * {@code int}, so pushing and popping entries does not allocate any objects.
+ * </p>
  */
 public class CellStack {
 
+    /**
+     * Returned by {@link CellStack#pop()} when the stack is empty.
+     */
+    public static final int EMPTY = -1;
+
+    private static final int SHAPE_BITS = 3;
+    private static final int SHAPE_MASK = (1 << SHAPE_BITS) - 1;
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
     @NotNull
-    private final Stack<@NotNull FillableCell> cellStack = new Stack<>();
+    private int[] entries = new int[16];
+    private int size = 0;
     private IntegerProperty undoCountProperty = new SimpleIntegerProperty(0);
 
     /**
-     * Pushes a cell into the stack.
+     * Pushes an entry into the stack.
+     *
+     * @param cellIndex Index of the cell in the map.
+     * @param shape     Shape of the pipe placed into the cell.
+     */
+    public void push(int cellIndex, @NotNull final Pipe.Shape shape) {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[size++] = (cellIndex << SHAPE_BITS) | shape.ordinal();
+    }
+
+    /**
+     * Pushes an entry returned by {@link CellStack#pop()} back into the stack.
      *
-     * @param cell Cell to push into the stack.
+     * @param entry Entry to push.
      */
-    public void push(@NotNull final FillableCell cell) {
-        cellStack.push(cell);
+    public void push(int entry) {
+        push(cellIndexOf(entry), shapeOf(entry));
     }
 
     /**
-     * Pops a cell from the stack.
+     * Pops an entry from the stack.
      *
-     * @return The last-pushed cell, or {@code null} if the stack is empty.
+     * @return The last-pushed entry, or {@link CellStack#EMPTY} if the stack is empty. Use
+     * {@link CellStack#cellIndexOf(int)} and {@link CellStack#shapeOf(int)} to read the entry.
      */
-    @Nullable
-    public FillableCell pop() {
-        if (cellStack.empty()) {
-            return null;
+    public int pop() {
+        if (size == 0) {
+            return EMPTY;
         }
 
         undoCountProperty.set(undoCountProperty.get() + 1);
-        return cellStack.pop();
+        return entries[--size];
+    }
+
+    /**
+     * @param entry Entry returned by {@link CellStack#pop()}.
+     * @return Index of the cell in the map.
+     */
+    public static int cellIndexOf(int entry) {
+        return entry >>> SHAPE_BITS;
+    }
+
+    /**
+     * @param entry Entry returned by {@link CellStack#pop()}.
+     * @return Shape of the pipe placed into the cell.
+     */
+    @NotNull
+    public static Pipe.Shape shapeOf(int entry) {
+        return SHAPES[entry & SHAPE_MASK];
     }
 
     @NotNull
@@ -1,33 +1,44 @@
 package models;
 
 import controllers.AudioManager;
+import controllers.Renderer;
 import controllers.ResourceLoader;
+import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
-import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
-import javafx.scene.control.ButtonType;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import models.map.Map;
+import models.map.MapDelta;
 import models.map.cells.Cell;
-import models.map.cells.FillableCell;
 import models.pipes.Pipe;
+import models.pipes.UniformPipeSource;
+import models.solver.LevelGenerator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import textgame.game.Game;
 import util.Coordinate;
+import util.GenerationContext;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * JavaFX version of {@link textgame.game.Game}.
+ *
+ * <p>
+ * All changes to the map, the pipe queue and the undo stack are submitted as commands to a {@link GameLoop}, and are run
+ * on its logic thread. After each command, the logic thread publishes a {@link GameSnapshot}, which is what the
+ * JavaFX thread renders.
+ * </p>
  */
 public class FXGame {
 
@@ -43,6 +54,10 @@ public class FXGame {
      * Default number of columns.
      */
     private static boolean defaultCountDownEnabled = false;
+    /**
+     * Default number of pipes generated ahead in the queue.
+     */
+    private static int defaultLookahead = PipeQueue.DEFAULT_LOOKAHEAD;
 
     @NotNull
     private final Map map;
@@ -52,15 +67,38 @@ public class FXGame {
     private final FlowTimer flowTimer;
     @NotNull
     private final CellStack cellStack = new CellStack();
+    @NotNull
+    private final HintEngine hints;
+    /**
+     * Seed of the {@link GenerationContext} the game was generated from.
+     */
+    private final long seed;
+
+    @NotNull
+    private final GameLoop loop = new GameLoop(this::onCommandFailed);
+    /**
+     * Latest state published by the logic thread.
+     */
+    @NotNull
+    private volatile GameSnapshot snapshot;
+    @NotNull
+    private final List<Consumer<GameSnapshot>> onStateHandlers = new CopyOnWriteArrayList<>();
 
+    // properties for the JavaFX thread, updated from the published snapshots
     private IntegerProperty numOfSteps = new SimpleIntegerProperty(0);
+    private IntegerProperty numOfUndo = new SimpleIntegerProperty(0);
 
-    private boolean isPlaying = true;
+    // state below is only accessed by the logic thread, except during construction
+    private int steps = 0;
+    private boolean won = false;
+    private boolean lost = false;
     private boolean goldFingerUsed = false;
     @Nullable
     private Integer bestRecord = null;          //if the game do not take any record it is null
     private boolean recordBeaked = false;
 
+    private boolean isPlaying = true;
+
     /**
      * Sets the default number of rows for generated maps.
      *
@@ -80,6 +118,27 @@ public class FXGame {
     }
 
     public static void setDefaultCountDownEnabled(boolean enabled) { defaultCountDownEnabled = enabled; }
+
+    /**
+     * Sets the number of pipes generated ahead in the queue of new games.
+     *
+     * @param lookahead New default lookahead.
+     * @throws IllegalArgumentException if the lookahead is not between 1 and {@link PipeQueue#MAX_LOOKAHEAD}.
+     */
+    public static void setDefaultLookahead(int lookahead) {
+        if (lookahead < 1 || lookahead > PipeQueue.MAX_LOOKAHEAD) {
+            throw new IllegalArgumentException("The lookahead must be between 1 and " + PipeQueue.MAX_LOOKAHEAD);
+        }
+        defaultLookahead = lookahead;
+    }
+
+    /**
+     * @return Current number of pipes generated ahead in the queue of new games.
+     */
+    public static int getDefaultLookahead() {
+        return defaultLookahead;
+    }
+
     /**
      * @return Current default number of rows for generated maps.
      */
@@ -102,20 +161,44 @@ public class FXGame {
      * Constructs an instance with default number of rows and columns.
      */
     public FXGame() {
-        this(defaultRows, defaultCols);
+        this(new GenerationContext());
+    }
+
+    /**
+     * Constructs an instance with default number of rows and columns, generated from the given context.
+     *
+     * <p>
+     * Contexts with the same seed generate the same game.
+     * </p>
+     *
+     * @param context Randomness of the game.
+     */
+    public FXGame(@NotNull GenerationContext context) {
+        this(defaultRows, defaultCols, context);
     }
 
     /**
      * Constructs an instance with given number of rows and columns.
      *
-     * @param rows Number of rows (excluding side walls)
-     * @param cols Number of columns (excluding side walls)
+     * <p>
+     * The map and the first pipes of the queue are generated by {@link LevelGenerator}, so the level can be solved.
+     * </p>
+     *
+     * @param rows    Number of rows (excluding side walls)
+     * @param cols    Number of columns (excluding side walls)
+     * @param context Randomness of the game.
      */
-    private FXGame(int rows, int cols) {
+    private FXGame(int rows, int cols, @NotNull GenerationContext context) {
         // TODO
-        map = new Map(rows+2, cols+2);
-        pipeQueue = new PipeQueue();
+        final var level = new LevelGenerator(context.split().getRandom())
+                .generate(rows+2, cols+2, FlowTimer.getDefaultDelay(), LevelGenerator.Difficulty.NORMAL)
+                .getProperties();
+        seed = context.getSeed();
+        map = new Map(level.rows, level.cols, level.cells);
+        pipeQueue = new PipeQueue(level.pipes, new UniformPipeSource(context.split()), defaultLookahead);
         flowTimer = new FlowTimer();
+        hints = createHintEngine(map);
+        snapshot = createSnapshot();
     }
 
     /**
@@ -128,10 +211,29 @@ public class FXGame {
      * @param pipes Initial pipes, if provided.
      */
     public FXGame(int rows, int cols, int delay, @NotNull Cell[][] cells, @Nullable List<Pipe> pipes) {
+        this(rows, cols, delay, cells, pipes, new GenerationContext());
+    }
+
+    /**
+     * Constructs an instance with all given parameters, generating the pipes after the given ones from the given
+     * context.
+     *
+     * @param rows    Number of rows including side walls
+     * @param cols    Number of columns including side walls
+     * @param delay   Delay in seconds before water starts flowing.
+     * @param cells   Initial map.
+     * @param pipes   Initial pipes, if provided.
+     * @param context Randomness of the game.
+     */
+    public FXGame(int rows, int cols, int delay, @NotNull Cell[][] cells, @Nullable List<Pipe> pipes,
+                  @NotNull GenerationContext context) {
         // TODO
+        seed = context.getSeed();
         map = new Map(rows, cols, cells);
-        pipeQueue = new PipeQueue(pipes);
+        pipeQueue = new PipeQueue(pipes, new UniformPipeSource(context.split()), defaultLookahead);
         flowTimer = new FlowTimer(delay);
+        hints = createHintEngine(map);
+        snapshot = createSnapshot();
     }
 
     //constructor for initialize value of bestRecord
@@ -139,6 +241,7 @@ public class FXGame {
         // TODO
         this(rows, cols, delay, cells, pipes);
         this.bestRecord = bestRecord;
+        snapshot = createSnapshot();
     }
 
     /**
@@ -159,6 +262,38 @@ public class FXGame {
         flowTimer.registerTickCallback(handler);
     }
 
+    /**
+     * Adds a handler to be run on the JavaFX application thread whenever the logic thread publishes a new state.
+     *
+     * @param handler Handler receiving the new state.
+     */
+    public void addOnStateHandler(@NotNull Consumer<GameSnapshot> handler) {
+        onStateHandlers.add(handler);
+    }
+
+    /**
+     * Adds a handler which receives the changes made to the map by every command.
+     *
+     * <p>
+     * Unlike the handlers added by {@link FXGame#addOnStateHandler(Consumer)}, this handler is run on the logic thread,
+     * before the new state is published. Each command is delivered as one {@link MapDelta}, which is only valid until
+     * the handler returns.
+     * </p>
+     *
+     * @param handler Handler receiving the changes.
+     */
+    public void addOnDeltaHandler(@NotNull MapDelta.Listener handler) {
+        map.addDeltaListener(handler);
+    }
+
+    /**
+     * @return The latest state published by the logic thread.
+     */
+    @NotNull
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * Starts the flow of water.
      */
@@ -167,10 +302,29 @@ public class FXGame {
     }
 
     /**
-     * Stops the flow of water.
+     * Stops the flow of water, and stops accepting commands.
      */
     public void stopCountdown() {
         flowTimer.stop();
+        loop.shutdown();
+        hints.shutdown();
+    }
+
+    /**
+     * Suggests where to place the next pipe of the queue.
+     *
+     * <p>
+     * The hints are kept up to date in the background after every step, so this is cheap to call on every key press. A
+     * hint asked for right after a step may not reflect that step yet.
+     * </p>
+     *
+     * @return The best cell for the next pipe, or {@code null} if the pipe cannot extend the pipeline and should be
+     * skipped.
+     */
+    @Nullable
+    public Coordinate getHint() {
+        final var pipes = snapshot.getPipes();
+        return pipes.isEmpty() ? null : hints.getHint(pipes.get(0).getShape());
     }
 
     /**
@@ -180,18 +334,24 @@ public class FXGame {
      */
     public void placePipe(int row, int col) {
         // TODO
-        if(!map.tryPlacePipe(new Coordinate(row, col), pipeQueue.peek())){
+        submit(() -> doPlacePipe(row, col));
+    }
+
+    private void doPlacePipe(int row, int col) {
+        final Pipe.Shape shape = pipeQueue.peek();
+        if(!map.tryPlacePipe(row, col, shape)){
             if(map.isGoldFingerActivated() && !goldFingerUsed){
-                goldFingerOperation(row, col);
+                goldFingerUsed = true;
+                Platform.runLater(() -> goldFingerOperation(row, col));
             }
             return;
         }
         //play a sound if place pipe is successful
         AudioManager.getInstance().playSound(AudioManager.SoundRes.MOVE);
 
-        cellStack.push(new FillableCell(new Coordinate(row, col), pipeQueue.peek()));
+        cellStack.push(map.indexOf(row, col), shape);
         pipeQueue.consume();
-        numOfSteps.set(numOfSteps.intValue()+1);
+        ++steps;
     }
 
     /**
@@ -199,9 +359,10 @@ public class FXGame {
      */
     public void skipPipe() {
         // TODO
-        numOfSteps.set(numOfSteps.intValue()+1);
-        //System.out.println(numOfSteps.intValue());
-        pipeQueue.consume();
+        submit(() -> {
+            ++steps;
+            pipeQueue.consume();
+        });
     }
 
     /**
@@ -209,18 +370,23 @@ public class FXGame {
      */
     public void undoStep() {
         // TODO
-        FillableCell fillableCell = cellStack.pop();
-        if(fillableCell == null){
+        submit(this::doUndoStep);
+    }
+
+    private void doUndoStep() {
+        final int entry = cellStack.pop();
+        if(entry == CellStack.EMPTY){
             return;
         }
-        if(fillableCell.getPipe().get().getFilled()){
-            cellStack.push(fillableCell);
+        final int idx = CellStack.cellIndexOf(entry);
+        if(map.isFilled(idx)){
+            cellStack.push(entry);
             return;
         }
         else{
-            pipeQueue.undo(fillableCell.getPipe().get());
-            map.undo(fillableCell.coord);
-            getNumOfSteps().setValue(getNumOfSteps().intValue()+1);
+            pipeQueue.undo(CellStack.shapeOf(entry));
+            map.undo(idx);
+            ++steps;
         }
     }
 
@@ -230,7 +396,8 @@ public class FXGame {
      * @param canvas {@link Canvas} to render to.
      */
     public void renderMap(@NotNull Canvas canvas) {
-        map.render(canvas);
+        final var cells = snapshot.getMap();
+        Platform.runLater(() -> Renderer.renderMap(canvas, cells));
     }
 
     /**
@@ -239,7 +406,8 @@ public class FXGame {
      * @param canvas {@link Canvas} to render to.
      */
     public void renderQueue(@NotNull Canvas canvas) {
-        pipeQueue.render(canvas);
+        final var pipes = snapshot.getPipes();
+        Platform.runLater(() -> Renderer.renderQueue(canvas, pipes));
     }
 
     /**
@@ -247,7 +415,12 @@ public class FXGame {
      */
     public void updateState() {
         // TODO
-        int distance = flowTimer.distance();
+        // the distance is read now, since the timer advances it as soon as the flow callbacks return
+        final int distance = flowTimer.distance();
+        submit(() -> doUpdateState(distance));
+    }
+
+    private void doUpdateState(int distance) {
         if(distance<0){
             return;
         }
@@ -256,40 +429,121 @@ public class FXGame {
             return;
         }
         map.fillTiles(distance);
+        if(map.hasLost()){
+            lost = true;
+            AudioManager.getInstance().playSound(AudioManager.SoundRes.LOSE);
+        }
     }
 
     /**
-     * @see Game#updateState()
+     * Checks whether the last command has connected the source to the sink, and ends the game if so.
      */
-    public boolean hasWon() {
+    private void checkWon() {
         // TODO
         if(map.checkPath()){
+            won = true;
             AudioManager.getInstance().playSound(AudioManager.SoundRes.WIN);
             stopCountdown();
-            fillAllPipes();
+            map.fillAll();
             if(bestRecord != null){
                 if(flowTimer.getRealTicksElapsed()<bestRecord){
-                    Alert breakRecord = new Alert(Alert.AlertType.INFORMATION, "you break the record", ButtonType.OK);
                     recordBeaked = true;
                     bestRecord = flowTimer.getRealTicksElapsed();
-                    breakRecord.showAndWait();
                 }
             }
-            return true;
         }
-        return false;
     }
 
     /**
+     * @return Whether the latest published state is won.
+     * @see Game#updateState()
+     */
+    public boolean hasWon() {
+        return snapshot.isWon();
+    }
+
+    /**
+     * @return Whether the latest published state is lost.
      * @see Game#hasLost()
      */
     public boolean hasLost() {
-        // TODO
-        if(map.hasLost() && flowTimer.distance() > 0){
-            AudioManager.getInstance().playSound(AudioManager.SoundRes.LOSE);
-            return true;
-        }
-        return false;
+        return snapshot.isLost();
+    }
+
+    /**
+     * Submits a command to the logic thread. Once the game is won or lost, commands are ignored.
+     *
+     * <p>
+     * The command is run as one step of the map. After the command is run, the changes to the map are delivered to the
+     * handlers added by {@link FXGame#addOnDeltaHandler(MapDelta.Listener)}, and the new state is published to the
+     * handlers added by {@link FXGame#addOnStateHandler(Consumer)}.
+     * </p>
+     *
+     * @param command Command to run.
+     */
+    private void submit(@NotNull Runnable command) {
+        loop.submit(() -> {
+            if(won || lost){
+                return;
+            }
+
+            map.beginStep();
+            try {
+                command.run();
+                if(!lost){
+                    checkWon();
+                }
+            } finally {
+                map.endStep();
+            }
+            publish();
+        });
+    }
+
+    /**
+     * Ends a game whose command has failed, and publishes the failure. Run on the logic thread once the loop has
+     * stopped.
+     *
+     * <p>
+     * The failed command may have left the map and the queue half-changed, so the published state keeps the map and
+     * pipes of the last published state.
+     * </p>
+     *
+     * @param e Failure of the command.
+     */
+    private void onCommandFailed(@NotNull RuntimeException e) {
+        stopCountdown();
+        final var last = snapshot;
+        publish(new GameSnapshot(last.getMap(), last.getPipes(), last.getNumOfSteps(), last.getNumOfUndo(),
+                last.isWon(), last.isLost(), last.getBestRecord(), last.isRecordBroken(), e));
+    }
+
+    private void publish() {
+        publish(createSnapshot());
+    }
+
+    private void publish(@NotNull GameSnapshot s) {
+        snapshot = s;
+        Platform.runLater(() -> {
+            numOfSteps.set(s.getNumOfSteps());
+            numOfUndo.set(s.getNumOfUndo());
+            for (var handler : onStateHandlers) {
+                handler.accept(s);
+            }
+        });
+    }
+
+    @NotNull
+    private static HintEngine createHintEngine(@NotNull Map map) {
+        final var engine = new HintEngine(map.getSnapshot(), map.getSources(), map.getSinks());
+        map.addDeltaListener(engine);
+        return engine;
+    }
+
+    @NotNull
+    private GameSnapshot createSnapshot() {
+        return new GameSnapshot(map.getSnapshot(), pipeQueue.copyPipes(), steps,
+                cellStack.getUndoCountProperty().get(), won, lost, bestRecord, recordBeaked, null);
     }
 
     /**
@@ -327,7 +581,7 @@ public class FXGame {
             Button x = new Button();
             final int finalI = i;
             x.setOnAction(e -> {
-                map.forcePlacePipe(row, col, new Pipe(Pipe.Shape.values()[finalI]));
+                submit(() -> map.forcePlacePipe(row, col, new Pipe(Pipe.Shape.values()[finalI])));
                 stage.close();
                 pauseAndPlay();
             });
@@ -340,14 +594,21 @@ public class FXGame {
         stage.setScene(scene);
         stage.setTitle("Pipes Replace Options");
         stage.showAndWait();
-        goldFingerUsed = true;
     }
 
     /**
      * Fills all reachable pipes in the map.
      */
     public void fillAllPipes() {
-        map.fillAll();
+        submit(map::fillAll);
+    }
+
+    /**
+     * @return Seed which generates this game again when passed to {@link FXGame#FXGame(GenerationContext)}, or for
+     * loaded levels, the same pipe queue.
+     */
+    public long getSeed() {
+        return seed;
     }
 
     public IntegerProperty getNumOfSteps() {
@@ -355,14 +616,14 @@ public class FXGame {
     }
 
     public IntegerProperty getNumOfUndo() {
-        return cellStack.getUndoCountProperty();
+        return numOfUndo;
     }
 
     public Integer getBestRecord() {
-        return bestRecord;
+        return snapshot.getBestRecord();
     }
 
     public boolean isRecordBeaked() {
-        return recordBeaked;
+        return snapshot.isRecordBroken();
     }
 }
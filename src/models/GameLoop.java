@@ -0,0 +1,79 @@
+package models;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Single logic thread of a {@link FXGame}.
+ *
+ * <p>
+ * Every command which changes the state of a game is submitted to this loop, and the commands are executed one at a
+ * time in the order they are submitted. Since only the logic thread writes to the game state, the state itself needs no
+ * locking.
+ * </p>
+ * <p>
+ * A command which throws may have left the state half-changed, so the loop stops at the first failed command: the
+ * commands after it are not run, and the failure is reported to the error handler of the loop.
+ * </p>
+ */
+class GameLoop {
+
+    @NotNull
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final var thread = new Thread(r, "game-logic");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @NotNull
+    private final Consumer<RuntimeException> onError;
+    /**
+     * Whether a command has failed. Only accessed by the logic thread.
+     */
+    private boolean failed = false;
+
+    /**
+     * @param onError Handler of the first command which fails, run on the logic thread after the loop is stopped.
+     */
+    GameLoop(@NotNull Consumer<RuntimeException> onError) {
+        this.onError = onError;
+    }
+
+    /**
+     * Submits a command to be run on the logic thread.
+     *
+     * <p>
+     * Commands submitted after the loop is shut down or has failed are ignored.
+     * </p>
+     *
+     * @param command Command to run.
+     */
+    void submit(@NotNull Runnable command) {
+        try {
+            executor.execute(() -> {
+                if (failed) {
+                    return;
+                }
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    failed = true;
+                    executor.shutdown();
+                    onError.accept(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the game has ended
+        }
+    }
+
+    /**
+     * Shuts down the loop. Commands which are already submitted are still run.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,102 @@
+package models;
+
+import models.map.MapSnapshot;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Immutable state of a {@link FXGame}, published by the logic thread after each command.
+ *
+ * <p>
+ * A snapshot does not share any mutable objects with the game, so it can be read from any thread.
+ * </p>
+ */
+public final class GameSnapshot {
+
+    @NotNull
+    private final MapSnapshot map;
+    @NotNull
+    private final List<Pipe> pipes;
+    private final int numOfSteps;
+    private final int numOfUndo;
+    private final boolean won;
+    private final boolean lost;
+    @Nullable
+    private final Integer bestRecord;
+    private final boolean recordBroken;
+    @Nullable
+    private final RuntimeException error;
+
+    GameSnapshot(@NotNull MapSnapshot map, @NotNull List<Pipe> pipes, int numOfSteps, int numOfUndo,
+                 boolean won, boolean lost, @Nullable Integer bestRecord, boolean recordBroken,
+                 @Nullable RuntimeException error) {
+        this.map = map;
+        this.pipes = pipes;
+        this.numOfSteps = numOfSteps;
+        this.numOfUndo = numOfUndo;
+        this.won = won;
+        this.lost = lost;
+        this.bestRecord = bestRecord;
+        this.recordBroken = recordBroken;
+        this.error = error;
+    }
+
+    /**
+     * @return Cells of the map.
+     */
+    @NotNull
+    public MapSnapshot getMap() {
+        return map;
+    }
+
+    /**
+     * @return Displayed pipes of the queue, in order.
+     */
+    @NotNull
+    public List<Pipe> getPipes() {
+        return pipes;
+    }
+
+    public int getNumOfSteps() {
+        return numOfSteps;
+    }
+
+    public int getNumOfUndo() {
+        return numOfUndo;
+    }
+
+    /**
+     * @return Whether the source has been connected to the sink.
+     */
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     * @return Whether a round of water flow has ended without filling any pipes.
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    @Nullable
+    public Integer getBestRecord() {
+        return bestRecord;
+    }
+
+    public boolean isRecordBroken() {
+        return recordBroken;
+    }
+
+    /**
+     * @return The failure which stopped the game, or {@code null} if the game has not failed. A failed game accepts no
+     * more commands, and its state may be inconsistent.
+     */
+    @Nullable
+    public RuntimeException getError() {
+        return error;
+    }
+}
@@ -0,0 +1,463 @@
+package models;
+
+import models.map.GridTraversal;
+import models.map.MapDelta;
+import models.map.MapSnapshot;
+import models.map.cells.TerminationCell;
+import models.map.cells.Wall;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+import util.Direction;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Suggests the best cell for each pipe shape, for the hints of a {@link FXGame}.
+ *
+ * <p>
+ * A pipe can only be suggested for an empty cell next to an opening of the pipeline connected to a source. Such a cell
+ * is rated by where its other openings lead: into a sink, towards a sink, or into a wall, and cells next to the water
+ * are preferred. The distance towards a sink is measured around the walls only, ignoring the pipes, so it can be
+ * computed once per map.
+ * </p>
+ * <p>
+ * The rating of a cell only depends on the cell and its neighbours, so the engine caches the rating of every cell for
+ * every shape, and each change to the map only invalidates the changed cells and their neighbours. The engine keeps its
+ * own copy of the map, which only its background thread updates: the {@link MapDelta}s of the logic thread are copied
+ * into a queue, and the background thread applies them, rates the invalidated cells again and publishes the best cells.
+ * Asking for a hint only reads the published cells, so it never waits for the rating, but may lag behind the last step
+ * until the background thread has caught up.
+ * </p>
+ */
+class HintEngine implements MapDelta.Listener {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    private static final byte WALL = 0;
+    private static final byte FILLABLE = 1;
+    private static final byte SOURCE = 2;
+    private static final byte SINK = 3;
+
+    /**
+     * Rating of a cell where the shape cannot be suggested.
+     */
+    private static final int NONE = Integer.MIN_VALUE;
+    /**
+     * Rating of a cell where the pipe connects a sink without leaking.
+     */
+    private static final int CONNECTS_SINK = Integer.MAX_VALUE;
+    private static final int LEAK_PENALTY = 1 << 20;
+    private static final int WATER_BONUS = 1 << 10;
+    private static final int UNREACHABLE = 1 << 16;
+
+    /**
+     * Shift of the type of a queued event. The lower bits hold the index of the cell.
+     */
+    private static final int EVENT_TYPE_SHIFT = 32;
+    /**
+     * Shift of the openings of the placed pipe of a queued event.
+     */
+    private static final int EVENT_MASK_SHIFT = 40;
+    private static final MapDelta.Type[] EVENT_TYPES = MapDelta.Type.values();
+
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final byte[] kinds;
+    /**
+     * Openings of the pipe, source or sink in each cell, as a bitwise-OR of {@link Direction#mask()}.
+     */
+    @NotNull
+    private final byte[] openings;
+    @NotNull
+    private final BitSet filled = new BitSet();
+    /**
+     * Pipes connected to a source.
+     */
+    @NotNull
+    private final BitSet connected = new BitSet();
+    /**
+     * Number of pipes from each cell to the nearest sink, around the walls.
+     */
+    @NotNull
+    private final int[] sinkDistances;
+    @NotNull
+    private final int[] sourceCells;
+
+    /**
+     * Rating of each cell for each shape, at {@code idx * SHAPES.length + shape.ordinal()}.
+     */
+    @NotNull
+    private final int[] ratings;
+    /**
+     * Cells which may be suggested for some shape.
+     */
+    @NotNull
+    private final BitSet candidates = new BitSet();
+    @NotNull
+    private final BitSet dirty = new BitSet();
+    /**
+     * Best cell for each shape, or {@code -1}. A new array is published after each refresh, and is never modified
+     * afterwards.
+     */
+    @NotNull
+    private volatile int[] best;
+    @NotNull
+    private int[] stack;
+
+    /**
+     * Events of the steps which have not been applied yet, each packed as in {@link HintEngine#pack(MapDelta, int)}.
+     */
+    @NotNull
+    private final ConcurrentLinkedQueue<long[]> pending = new ConcurrentLinkedQueue<>();
+    @NotNull
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    @NotNull
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final var thread = new Thread(r, "hint-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param map     Map at the start of the game.
+     * @param sources Source cells of the map.
+     * @param sinks   Sink cells of the map.
+     */
+    HintEngine(@NotNull MapSnapshot map, @NotNull List<TerminationCell> sources,
+               @NotNull List<TerminationCell> sinks) {
+        rows = map.getRows();
+        cols = map.getCols();
+        kinds = new byte[rows * cols];
+        openings = new byte[rows * cols];
+        ratings = new int[rows * cols * SHAPES.length];
+        stack = new int[16];
+        Arrays.fill(ratings, NONE);
+
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                final int idx = row * cols + col;
+                final var cell = map.getCell(new Coordinate(row, col));
+                if (cell instanceof Wall) {
+                    kinds[idx] = WALL;
+                } else if (cell instanceof TerminationCell) {
+                    final var tCell = (TerminationCell) cell;
+                    kinds[idx] = tCell.type == TerminationCell.Type.SOURCE ? SOURCE : SINK;
+                    openings[idx] = (byte) tCell.pointingTo.mask();
+                } else {
+                    kinds[idx] = FILLABLE;
+                    final var shape = map.getShape(row, col);
+                    openings[idx] = (byte) (shape != null ? shape.mask() : 0);
+                }
+                filled.set(idx, map.isFilled(row, col));
+            }
+        }
+
+        sourceCells = sources.stream().mapToInt(s -> s.coord.row * cols + s.coord.col).toArray();
+        sinkDistances = new int[rows * cols];
+        Arrays.fill(sinkDistances, UNREACHABLE);
+        final var traversal = new GridTraversal(rows, cols);
+        for (var sink : sinks) {
+            final int entry = neighbour(sink.coord.row * cols + sink.coord.col, sink.pointingTo.getOpposite());
+            if (entry == -1 || kinds[entry] != FILLABLE) {
+                continue;
+            }
+            traversal.bfs(entry, (idx, dir, next) -> kinds[next] == FILLABLE, (idx, distance) -> {
+                sinkDistances[idx] = Math.min(sinkDistances[idx], distance + 1);
+                return true;
+            });
+        }
+
+        reconnect();
+        best = refresh();
+    }
+
+    /**
+     * Queues the changes to be applied to the copy of the map by the background thread. Run on the logic thread.
+     */
+    @Override
+    public void onDelta(@NotNull MapDelta delta) {
+        final var events = new long[delta.size()];
+        for (int i = 0; i < events.length; ++i) {
+            events[i] = pack(delta, i);
+        }
+        pending.add(events);
+        schedule();
+    }
+
+    /**
+     * @param shape Shape of the pipe to place.
+     * @return The best cell for the pipe, or {@code null} if the pipe cannot extend the pipeline.
+     */
+    @Nullable
+    Coordinate getHint(@NotNull Pipe.Shape shape) {
+        final int idx = best[shape.ordinal()];
+        return idx == -1 ? null : new Coordinate(idx / cols, idx % cols);
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void schedule() {
+        if (scheduled.getAndSet(true)) {
+            return;
+        }
+        try {
+            executor.execute(this::update);
+        } catch (RejectedExecutionException e) {
+            // the game has ended
+        }
+    }
+
+    /**
+     * Applies the queued changes, and publishes the best cells if any cell was invalidated. Run on the background
+     * thread.
+     */
+    private void update() {
+        // cleared first, so changes queued from now on schedule another update
+        scheduled.set(false);
+        for (long[] events = pending.poll(); events != null; events = pending.poll()) {
+            for (long event : events) {
+                apply(event);
+            }
+        }
+        if (!dirty.isEmpty()) {
+            best = refresh();
+        }
+    }
+
+    /**
+     * @param delta Changes made during a step.
+     * @param i     Index of the event.
+     * @return The event, packed into its type, the openings of its pipe and the index of its cell.
+     */
+    private static long pack(@NotNull MapDelta delta, int i) {
+        final var shape = delta.getShape(i);
+        final long mask = delta.getType(i) == MapDelta.Type.PIPE_PLACED && shape != null ? shape.mask() : 0;
+        return mask << EVENT_MASK_SHIFT | (long) delta.getType(i).ordinal() << EVENT_TYPE_SHIFT
+                | delta.getCellIndex(i);
+    }
+
+    /**
+     * Updates the copy of the map with an event packed by {@link HintEngine#pack(MapDelta, int)}.
+     */
+    private void apply(long event) {
+        final int idx = (int) event;
+        switch (EVENT_TYPES[(int) (event >>> EVENT_TYPE_SHIFT) & 0xFF]) {
+            case PIPE_PLACED:
+                openings[idx] = (byte) (event >>> EVENT_MASK_SHIFT);
+                invalidate(idx);
+                if (isFed(idx)) {
+                    connectFrom(idx);
+                }
+                break;
+            case PIPE_REMOVED:
+                openings[idx] = 0;
+                invalidate(idx);
+                reconnect();
+                break;
+            case CELL_FILLED:
+            case SOURCE_FILLED:
+                filled.set(idx);
+                invalidate(idx);
+                break;
+            case SINK_FILLED:
+                break;
+        }
+    }
+
+    /**
+     * Rates the invalidated cells again.
+     *
+     * @return A new array of the best cell of each shape.
+     */
+    @NotNull
+    private int[] refresh() {
+        for (int idx = dirty.nextSetBit(0); idx >= 0; idx = dirty.nextSetBit(idx + 1)) {
+            boolean candidate = false;
+            for (var shape : SHAPES) {
+                final int rating = rate(idx, shape.mask());
+                ratings[idx * SHAPES.length + shape.ordinal()] = rating;
+                candidate |= rating != NONE;
+            }
+            candidates.set(idx, candidate);
+        }
+        dirty.clear();
+
+        final var next = new int[SHAPES.length];
+        for (var shape : SHAPES) {
+            int bestIdx = -1;
+            int bestRating = NONE;
+            for (int idx = candidates.nextSetBit(0); idx >= 0; idx = candidates.nextSetBit(idx + 1)) {
+                final int rating = ratings[idx * SHAPES.length + shape.ordinal()];
+                if (rating > bestRating) {
+                    bestIdx = idx;
+                    bestRating = rating;
+                }
+            }
+            next[shape.ordinal()] = bestIdx;
+        }
+        return next;
+    }
+
+    /**
+     * @param idx  Index of the cell.
+     * @param mask Openings of the pipe.
+     * @return Rating of placing the pipe into the cell, or {@link HintEngine#NONE} if it does not extend the pipeline.
+     */
+    private int rate(int idx, int mask) {
+        if (kinds[idx] != FILLABLE || openings[idx] != 0) {
+            return NONE;
+        }
+
+        boolean attached = false;
+        boolean nearWater = false;
+        boolean reachesSink = false;
+        int leaks = 0;
+        int distance = UNREACHABLE;
+        for (var d : DIRECTIONS) {
+            if ((mask & d.mask()) == 0) {
+                continue;
+            }
+
+            final int next = neighbour(idx, d);
+            if (next == -1 || kinds[next] == WALL) {
+                ++leaks;
+                continue;
+            }
+
+            final boolean linked = (openings[next] & d.getOpposite().mask()) != 0;
+            if (kinds[next] == SOURCE) {
+                attached |= linked;
+                nearWater |= linked && filled.get(next);
+                leaks += linked ? 0 : 1;
+            } else if (kinds[next] == SINK) {
+                // a sink opens towards the direction it points to, which is away from the pipe that feeds it
+                final boolean feeds = (openings[next] & d.mask()) != 0;
+                reachesSink |= feeds;
+                leaks += feeds ? 0 : 1;
+                distance = feeds ? 0 : distance;
+            } else if (openings[next] == 0) {
+                distance = Math.min(distance, sinkDistances[next]);
+            } else if (!linked) {
+                ++leaks;
+            } else if (connected.get(next)) {
+                attached = true;
+                nearWater |= filled.get(next);
+            } else {
+                distance = Math.min(distance, sinkDistances[next]);
+            }
+        }
+
+        if (!attached) {
+            return NONE;
+        }
+        if (reachesSink && leaks == 0) {
+            return CONNECTS_SINK;
+        }
+        return -distance - leaks * LEAK_PENALTY + (nearWater ? WATER_BONUS : 0);
+    }
+
+    /**
+     * @return Whether the pipe in the cell is linked to a source or to a pipe connected to a source.
+     */
+    private boolean isFed(int idx) {
+        for (var d : DIRECTIONS) {
+            final int next = neighbour(idx, d);
+            if (next == -1 || (openings[idx] & d.mask()) == 0 || (openings[next] & d.getOpposite().mask()) == 0) {
+                continue;
+            }
+            if (kinds[next] == SOURCE || connected.get(next)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the pipes linked to the cell as connected, starting from the cell.
+     */
+    private void connectFrom(int start) {
+        int size = 0;
+        stack[size++] = start;
+        connected.set(start);
+        while (size > 0) {
+            final int idx = stack[--size];
+            invalidate(idx);
+            for (var d : DIRECTIONS) {
+                final int next = neighbour(idx, d);
+                if (next == -1 || kinds[next] != FILLABLE || connected.get(next)
+                        || (openings[idx] & d.mask()) == 0 || (openings[next] & d.getOpposite().mask()) == 0) {
+                    continue;
+                }
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                }
+                connected.set(next);
+                stack[size++] = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the connected pipes again from the sources, after a pipe is removed.
+     */
+    private void reconnect() {
+        final var previous = (BitSet) connected.clone();
+        connected.clear();
+        for (int source : sourceCells) {
+            invalidate(source);
+            final int target = neighbour(source, directionOf(openings[source]));
+            if (target != -1 && kinds[target] == FILLABLE && isFed(target) && !connected.get(target)) {
+                connectFrom(target);
+            }
+        }
+
+        // pipes which are no longer connected also change the rating of their neighbours
+        previous.andNot(connected);
+        for (int idx = previous.nextSetBit(0); idx >= 0; idx = previous.nextSetBit(idx + 1)) {
+            invalidate(idx);
+        }
+    }
+
+    /**
+     * Marks the cell and its neighbours to be rated again.
+     */
+    private void invalidate(int idx) {
+        dirty.set(idx);
+        for (var d : DIRECTIONS) {
+            final int next = neighbour(idx, d);
+            if (next != -1) {
+                dirty.set(next);
+            }
+        }
+    }
+
+    private int neighbour(int idx, @NotNull Direction d) {
+        final int row = idx / cols + d.getRowOffset();
+        final int col = idx % cols + d.getColOffset();
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return -1;
+        }
+        return row * cols + col;
+    }
+
+    @NotNull
+    private static Direction directionOf(int mask) {
+        return DIRECTIONS[Integer.numberOfTrailingZeros(mask)];
+    }
+}
@@ -4,98 +4,234 @@ import controllers.Renderer;
 import javafx.application.Platform;
 import javafx.scene.canvas.Canvas;
 import models.pipes.Pipe;
+import models.pipes.PipeSource;
+import models.pipes.UniformPipeSource;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import util.GenerationContext;
+import util.Zobrist;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Class encapsulating the pipe queue.
+ *
+ * <p>
+ * The queue is a ring buffer of shape ordinals, so consuming, refilling and undoing pipes neither allocates nor moves
+ * the other pipes. The buffer is sized for the initial pipes and as many undos, and only grows if more pipes are
+ * undone than that. The queue always holds at least {@code lookahead} pipes, which can be peeked in constant time; only
+ * the first {@link PipeQueue#VISIBLE_LENGTH} of them are displayed.
+ * </p>
  */
 public class PipeQueue {
 
+    /**
+     * Default number of pipes which are generated ahead.
+     */
+    public static final int DEFAULT_LOOKAHEAD = 5;
+    /**
+     * Maximum number of pipes which can be generated ahead.
+     */
+    public static final int MAX_LOOKAHEAD = 1024;
     /**
      * Maximum number of pipes to display in the queue.
      */
-    private static final int MAX_GEN_LENGTH = 5;
+    public static final int VISIBLE_LENGTH = 5;
+    /**
+     * Zobrist table of the queue, which is distinct from the tables used by {@link models.map.Map#getHash()}.
+     */
+    private static final int HASH_TABLE_QUEUE = 2;
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
 
+    /**
+     * Ordinals of the shapes in the queue. Its length is a power of two.
+     */
+    @NotNull
+    private byte[] shapes;
+    private int mask;
+    private final int lookahead;
+    /**
+     * Index of the first pipe in {@link PipeQueue#shapes}.
+     */
+    private int head = 0;
+    private int size = 0;
+    /**
+     * Shapes of the generated pipes.
+     */
     @NotNull
-    private final LinkedList<Pipe> pipeQueue;
+    private final PipeSource source;
 
     /**
      * Creates an empty pipe queue.
      *
      * <p>
-     * This method should also populate the queue until it has {@link PipeQueue#MAX_GEN_LENGTH} number of pipes in it.
+     * This method should also populate the queue until it has {@link PipeQueue#DEFAULT_LOOKAHEAD} number of pipes in
+     * it.
      * </p>
      */
     public PipeQueue() {
-        pipeQueue = new LinkedList<>();
-
-        while (pipeQueue.size() < MAX_GEN_LENGTH) {
-            pipeQueue.add(generateNewPipe());
-        }
+        this(null, new GenerationContext());
     }
 
     /**
      * Creates a pipe queue with pipes already filled in the queue.
      *
      * <p>
-     * This method should also populate the queue until it has {@link PipeQueue#MAX_GEN_LENGTH} number of pipes in it.
+     * This method should also populate the queue until it has {@link PipeQueue#DEFAULT_LOOKAHEAD} number of pipes in
+     * it.
      * </p>
      *
      * @param pipes List of pipes to display before generated pipes.
      */
     public PipeQueue(@Nullable List<Pipe> pipes) {
-        pipeQueue = new LinkedList<>();
-        if (pipes != null) {
-            pipeQueue.addAll(pipes);
+        this(pipes, new GenerationContext());
+    }
+
+    /**
+     * Creates a pipe queue which generates its pipes with the given context.
+     *
+     * @param pipes   List of pipes to display before generated pipes.
+     * @param context Randomness of the generated pipes.
+     */
+    public PipeQueue(@Nullable List<Pipe> pipes, @NotNull GenerationContext context) {
+        this(pipes, new UniformPipeSource(context));
+    }
+
+    /**
+     * Creates a pipe queue which generates its pipes with the shapes drawn from the given source.
+     *
+     * @param pipes  List of pipes to display before generated pipes.
+     * @param source Shapes of the generated pipes.
+     */
+    public PipeQueue(@Nullable List<Pipe> pipes, @NotNull PipeSource source) {
+        this(pipes, source, DEFAULT_LOOKAHEAD);
+    }
+
+    /**
+     * Creates a pipe queue which keeps the given number of pipes generated ahead.
+     *
+     * @param pipes     List of pipes to display before generated pipes.
+     * @param source    Shapes of the generated pipes.
+     * @param lookahead Minimum number of pipes in the queue.
+     * @throws IllegalArgumentException if the lookahead is not between 1 and {@link PipeQueue#MAX_LOOKAHEAD}.
+     */
+    public PipeQueue(@Nullable List<Pipe> pipes, @NotNull PipeSource source, int lookahead) {
+        if (lookahead < 1 || lookahead > MAX_LOOKAHEAD) {
+            throw new IllegalArgumentException("The lookahead must be between 1 and " + MAX_LOOKAHEAD);
         }
 
-        while (pipeQueue.size() < MAX_GEN_LENGTH) {
-            pipeQueue.add(generateNewPipe());
+        final int initial = pipes == null ? 0 : pipes.size();
+        // room for the given pipes and as many undos, so the buffer rarely grows
+        final int capacity = Integer.highestOneBit(Math.max(8, Math.max(initial, lookahead) + lookahead) * 2 - 1);
+        this.shapes = new byte[capacity];
+        this.mask = capacity - 1;
+        this.lookahead = lookahead;
+        this.source = source;
+
+        if (pipes != null) {
+            for (var p : pipes) {
+                shapes[size++] = (byte) p.getShape().ordinal();
+            }
         }
+        refill();
+    }
+
+    /**
+     * @return Minimum number of pipes in the queue.
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * @return Number of pipes in the queue, which is at least the lookahead.
+     */
+    public int size() {
+        return size;
     }
 
     /**
      * Peeks the next pipe.
      *
-     * @return The next pipe in the queue.
-     * @throws IllegalStateException if there are no pipes in the queue.
+     * @return Shape of the next pipe in the queue.
      */
     @NotNull
-    public Pipe peek() {
-        var p = pipeQueue.peek();
-        if (p == null) {
-            throw new IllegalStateException();
-        }
+    public Pipe.Shape peek() {
+        return peek(0);
+    }
 
-        return p;
+    /**
+     * Peeks a pipe in the queue.
+     *
+     * @param i Position of the pipe, where {@code 0} is the next pipe.
+     * @return Shape of the pipe.
+     * @throws IllegalArgumentException if there is no pipe at the position.
+     */
+    @NotNull
+    public Pipe.Shape peek(int i) {
+        if (i < 0 || i >= size) {
+            throw new IllegalArgumentException("No pipe at position " + i + " of the queue");
+        }
+        return SHAPES[shapes[(head + i) & mask]];
     }
 
     /**
      * Consumes the next pipe.
      * <p>
-     * This method removes the pipe from the queue, and generate new ones if the queue has less elements than
-     * {@code pipeQueue}.
+     * This method removes the pipe from the queue, and generate new ones if the queue has less elements than the
+     * lookahead.
      */
     public void consume() {
-        pipeQueue.remove();
+        head = (head + 1) & mask;
+        --size;
+        refill();
+    }
+
+    /**
+     * Undoes a step by inserting {@code shape} into the front of the queue.
+     *
+     * @param shape Shape of the pipe to insert to front of queue.
+     */
+    public void undo(@NotNull final Pipe.Shape shape) {
+        if (size == shapes.length) {
+            grow();
+        }
+        head = (head - 1) & mask;
+        shapes[head] = (byte) shape.ordinal();
+        ++size;
+    }
 
-        while (pipeQueue.size() < MAX_GEN_LENGTH) {
-            pipeQueue.add(generateNewPipe());
+    /**
+     * @return New pipes of the displayed part of the queue, in order.
+     */
+    @NotNull
+    public List<Pipe> copyPipes() {
+        final int length = Math.min(size, VISIBLE_LENGTH);
+        final var pipes = new ArrayList<Pipe>(length);
+        for (int i = 0; i < length; ++i) {
+            pipes.add(new Pipe(peek(i)));
         }
+        return List.copyOf(pipes);
     }
 
     /**
-     * Undoes a step by inserting {@code pipe} into the front of the queue.
+     * Returns the Zobrist hash of the pipes in the queue.
      *
-     * @param pipe Pipe to insert to front of queue.
+     * <p>
+     * The hash depends on the position of each pipe, so every pipe shifts position when the front is consumed; it is
+     * therefore computed from the pipes in the queue. The keys do not overlap with those of
+     * {@link models.map.Map#getHash()}, so the two hashes can be combined with XOR.
+     * </p>
+     *
+     * @return Zobrist hash of the pipes in the queue.
      */
-    public void undo(@NotNull final Pipe pipe) {
-        pipeQueue.addFirst(pipe);
+    public long hash() {
+        long h = 0;
+        for (int i = 0; i < size; ++i) {
+            h ^= Zobrist.key(HASH_TABLE_QUEUE, i, shapes[(head + i) & mask]);
+        }
+        return h;
     }
 
     /**
@@ -103,8 +239,8 @@ public class PipeQueue {
      */
     public void display() {
         System.out.print("Next Pipes:  ");
-        for (var p : pipeQueue) {
-            System.out.print(p.toSingleChar() + "    ");
+        for (int i = 0; i < Math.min(size, VISIBLE_LENGTH); ++i) {
+            System.out.print(peek(i).getCharByState(false) + "    ");
         }
         System.out.println();
     }
@@ -116,24 +252,31 @@ public class PipeQueue {
      */
     public void render(@NotNull Canvas canvas) {
         // TODO
-        Platform.runLater(() -> Renderer.renderQueue(canvas, pipeQueue));
+        final var pipes = copyPipes();
+        Platform.runLater(() -> Renderer.renderQueue(canvas, pipes));
     }
 
     /**
-     * Generates a new pipe.
-     *
-     * <p>
-     * Hint: Use {@link Random#nextInt(int)} to generate random numbers.
-     * </p>
-     *
-     * @return A new pipe.
+     * Doubles the capacity of the buffer, moving the pipes to its front.
      */
-    @NotNull
-    private static Pipe generateNewPipe() {
-        var rand = new Random();
-        var availablePipes = Pipe.Shape.values();
-        int index = rand.nextInt(availablePipes.length);
+    private void grow() {
+        final var grown = new byte[shapes.length * 2];
+        for (int i = 0; i < size; ++i) {
+            grown[i] = shapes[(head + i) & mask];
+        }
+        shapes = grown;
+        mask = grown.length - 1;
+        head = 0;
+    }
 
-        return new Pipe(availablePipes[index]);
+    /**
+     * Generates new pipes until the queue has as many pipes as the lookahead, with the shapes drawn from the
+     * {@link PipeSource} of this queue.
+     */
+    private void refill() {
+        while (size < lookahead) {
+            shapes[(head + size) & mask] = (byte) source.next().ordinal();
+            ++size;
+        }
     }
 }
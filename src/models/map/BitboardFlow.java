@@ -0,0 +1,314 @@
+package models.map;
+
+import models.map.cells.TerminationCell;
+import org.jetbrains.annotations.NotNull;
+import util.Direction;
+
+import java.util.List;
+
+/**
+ * Word-parallel water flow for a {@link Map}.
+ *
+ * <p>
+ * For every direction, a bitboard holds the cells whose pipe has an opening towards that direction. A round then
+ * computes, 64 cells per word, the filled cells with an opening towards each direction, shifts them one cell into that
+ * direction and keeps the unfilled cells with an opening back. Only the words between the first and last filled cell,
+ * widened by one row, are processed in each round.
+ * </p>
+ * <p>
+ * Every filled cell is expanded in every round, so the filled cells are exactly the same as {@link FlowFront}.
+ * </p>
+ */
+class BitboardFlow implements FlowEngine {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final CellStorage storage;
+    @NotNull
+    private final FillListener listener;
+    @NotNull
+    private final FlowSources sources;
+
+    /**
+     * Cells with an opening towards each direction, indexed by {@link Direction#ordinal()}.
+     */
+    @NotNull
+    private final long[][] open;
+    /**
+     * Cells which are not in the first column.
+     */
+    @NotNull
+    private final long[] notFirstCol;
+    /**
+     * Cells which are not in the last column.
+     */
+    @NotNull
+    private final long[] notLastCol;
+
+    @NotNull
+    private final CellBitSet filled;
+    /**
+     * Cells filled during the current round.
+     */
+    @NotNull
+    private final long[] grown;
+    /**
+     * Range of words containing filled cells.
+     */
+    private int minWord = Integer.MAX_VALUE;
+    private int maxWord = -1;
+
+    /**
+     * The last distance which has been filled.
+     */
+    private int filledDistance = 0;
+    /**
+     * Number of cells filled during the last round.
+     */
+    private int lastRoundFilled = 0;
+
+    /**
+     * @param storage  Cells of the map. Pipes which are already in the storage are read once, and later changes must be
+     *                 reported through {@link BitboardFlow#onPipePlaced(int, int)} and
+     *                 {@link BitboardFlow#onPipeRemoved(int, int)}.
+     * @param sources  Source cells of the map.
+     * @param listener Receiver of filled cells.
+     */
+    BitboardFlow(@NotNull CellStorage storage, @NotNull List<TerminationCell> sources,
+                 @NotNull FillListener listener) {
+        this.rows = storage.rows();
+        this.cols = storage.cols();
+        this.storage = storage;
+        this.listener = listener;
+        this.sources = new FlowSources(rows, cols, sources);
+
+        final int size = rows * cols;
+        filled = new CellBitSet(size);
+
+        final int words = filled.wordCount();
+        open = new long[DIRECTIONS.length][words];
+        notFirstCol = new long[words];
+        notLastCol = new long[words];
+        grown = new long[words];
+
+        for (int idx = 0; idx < size; ++idx) {
+            final long bit = 1L << idx;
+            if (idx % cols != 0) {
+                notFirstCol[idx >>> 6] |= bit;
+            }
+            if (idx % cols != cols - 1) {
+                notLastCol[idx >>> 6] |= bit;
+            }
+            updatePorts(idx);
+        }
+    }
+
+    @Override
+    public void onPipePlaced(int row, int col) {
+        updatePorts(row * cols + col);
+    }
+
+    @Override
+    public void onPipeRemoved(int row, int col) {
+        updatePorts(row * cols + col);
+    }
+
+    private void updatePorts(int idx) {
+        final int mask = storage.connections(idx);
+        final int w = idx >>> 6;
+        final long bit = 1L << idx;
+        for (Direction d : DIRECTIONS) {
+            if ((mask & d.mask()) != 0) {
+                open[d.ordinal()][w] |= bit;
+            } else {
+                open[d.ordinal()][w] &= ~bit;
+            }
+        }
+    }
+
+    @Override
+    public void fill(int distance) {
+        while (filledDistance < distance) {
+            lastRoundFilled = 0;
+
+            if (filledDistance == 0) {
+                if (!fillFirst()) {
+                    return;
+                }
+            } else if (!fillRound() && !sources.hasWaiting()) {
+                // nothing can be filled in any of the remaining rounds
+                filledDistance = distance;
+                return;
+            }
+
+            ++filledDistance;
+        }
+    }
+
+    /**
+     * Fills the cells which the sources are pointing to.
+     *
+     * @return {@code true} if any cell is filled.
+     */
+    private boolean fillFirst() {
+        lastRoundFilled = fillReleasedSources();
+        return lastRoundFilled != 0;
+    }
+
+    /**
+     * Fills the cells pointed to by the waiting sources which can start flowing.
+     *
+     * @return Number of cells filled.
+     */
+    private int fillReleasedSources() {
+        final int released = sources.release(storage);
+        int count = 0;
+        for (int i = 0; i < released; ++i) {
+            final int idx = sources.releasedTarget(i);
+            if (!filled.get(idx)) {
+                count += markFilled(idx >>> 6, 1L << idx);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fills every pipe connected to a cell filled before this round.
+     *
+     * @return {@code true} if any cell is filled.
+     */
+    private boolean fillRound() {
+        if (maxWord == -1) {
+            lastRoundFilled = fillReleasedSources();
+            return lastRoundFilled != 0;
+        }
+
+        // a step of one row moves a cell by at most this many words
+        final int reach = cols / 64 + 1;
+        final int from = Math.max(0, minWord - reach);
+        final int to = Math.min(grown.length - 1, maxWord + reach);
+
+        for (int w = from; w <= to; ++w) {
+            final long bits = (stepped(Direction.UP, w)
+                    | stepped(Direction.DOWN, w)
+                    | (stepped(Direction.LEFT, w) & notLastCol[w])
+                    | (stepped(Direction.RIGHT, w) & notFirstCol[w]))
+                    & ~filled.word(w);
+            grown[w] = bits;
+        }
+
+        // cells are only marked after the whole round is computed, so that they cannot be expanded in the same round
+        int count = 0;
+        for (int w = from; w <= to; ++w) {
+            if (grown[w] != 0) {
+                count += markFilled(w, grown[w]);
+                grown[w] = 0;
+            }
+        }
+        count += fillReleasedSources();
+
+        lastRoundFilled = count;
+        return count != 0;
+    }
+
+    /**
+     * Computes the cells reached by stepping from the filled cells towards {@code d}.
+     *
+     * @param d Direction of the step.
+     * @param w Index of the word to compute.
+     * @return Cells in word {@code w} which are entered from a filled neighbour with an opening towards {@code d}, and
+     * which have an opening back towards the neighbour.
+     */
+    private long stepped(@NotNull Direction d, int w) {
+        final int shift = d.getRowOffset() * cols + d.getColOffset();
+        final long[] out = open[d.ordinal()];
+        final long[] in = open[d.getOpposite().ordinal()];
+
+        final long reached;
+        if (shift > 0) {
+            final int q = shift >>> 6;
+            final int r = shift & 63;
+            long bits = sourceWord(out, w - q) << r;
+            if (r != 0) {
+                bits |= sourceWord(out, w - q - 1) >>> (64 - r);
+            }
+            reached = bits;
+        } else {
+            final int q = (-shift) >>> 6;
+            final int r = (-shift) & 63;
+            long bits = sourceWord(out, w + q) >>> r;
+            if (r != 0) {
+                bits |= sourceWord(out, w + q + 1) << (64 - r);
+            }
+            reached = bits;
+        }
+
+        return reached & in[w];
+    }
+
+    /**
+     * @return Filled cells in word {@code w} with an opening in {@code out}, or {@code 0} if {@code w} is outside the
+     * map.
+     */
+    private long sourceWord(@NotNull long[] out, int w) {
+        if (w < 0 || w >= out.length) {
+            return 0L;
+        }
+        return filled.word(w) & out[w];
+    }
+
+    /**
+     * Marks the given cells as filled.
+     *
+     * @param w    Index of the word.
+     * @param bits Cells in the word to fill.
+     * @return Number of cells filled.
+     */
+    private int markFilled(int w, long bits) {
+        filled.orWord(w, bits);
+        minWord = Math.min(minWord, w);
+        maxWord = Math.max(maxWord, w);
+
+        final int round = filledDistance + 1;
+        int count = 0;
+        while (bits != 0) {
+            final int idx = (w << 6) + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+
+            listener.onFilled(idx, round);
+            storage.setFilled(idx);
+            ++count;
+        }
+        return count;
+    }
+
+    @NotNull
+    @Override
+    public FlowSources getSources() {
+        return sources;
+    }
+
+    @Override
+    public boolean isFilled(int row, int col) {
+        return filled.get(row * cols + col);
+    }
+
+    @NotNull
+    @Override
+    public CellBitSet getFilled() {
+        return filled;
+    }
+
+    @Override
+    public int getFilledDistance() {
+        return filledDistance;
+    }
+
+    @Override
+    public int getLastRoundFilled() {
+        return lastRoundFilled;
+    }
+}
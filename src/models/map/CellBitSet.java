@@ -0,0 +1,191 @@
+package models.map;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size set of cells of a {@link Map}, stored as one bit per cell.
+ *
+ * <p>
+ * Cells are addressed by their index {@code row * cols + col}. Compared to a {@code Set<Coordinate>}, this avoids
+ * allocating a {@link util.Coordinate} and a hash entry for every cell in the set.
+ * </p>
+ * <p>
+ * The bits are stored in pages of {@link CellBitSet#PAGE_SIZE} cells, which are only allocated once one of their cells
+ * is added, so a set over a huge map only pays for the pages around its cells.
+ * </p>
+ */
+class CellBitSet {
+
+    private static final int PAGE_SHIFT = 12;
+    /**
+     * Number of cells in each page.
+     */
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int WORD_PAGE_SHIFT = PAGE_SHIFT - 6;
+    private static final int WORD_PAGE_MASK = (1 << WORD_PAGE_SHIFT) - 1;
+
+    private final int size;
+    private final int wordCount;
+    /**
+     * Words of each page, or {@code null} for pages without any cells in the set.
+     */
+    private final long[][] pages;
+    private int count = 0;
+
+    /**
+     * @param size Number of cells which can be stored in the set.
+     */
+    CellBitSet(int size) {
+        this.size = size;
+        this.wordCount = (int) (((long) size + 63) >>> 6);
+        this.pages = new long[(wordCount + WORD_PAGE_MASK) >>> WORD_PAGE_SHIFT][];
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @return Whether the cell is in the set.
+     */
+    boolean get(int idx) {
+        final long[] page = pages[idx >>> PAGE_SHIFT];
+        return page != null && (page[(idx >>> 6) & WORD_PAGE_MASK] & (1L << idx)) != 0;
+    }
+
+    /**
+     * Adds a cell to the set.
+     *
+     * @param idx Index of the cell.
+     * @return {@code true} if the cell was not in the set before.
+     */
+    boolean set(int idx) {
+        final long[] page = page(idx >>> PAGE_SHIFT);
+        final int w = (idx >>> 6) & WORD_PAGE_MASK;
+        final long bit = 1L << idx;
+        if ((page[w] & bit) != 0) {
+            return false;
+        }
+
+        page[w] |= bit;
+        ++count;
+        return true;
+    }
+
+    /**
+     * Removes a cell from the set.
+     *
+     * @param idx Index of the cell.
+     */
+    void clear(int idx) {
+        final long[] page = pages[idx >>> PAGE_SHIFT];
+        if (page == null) {
+            return;
+        }
+
+        final int w = (idx >>> 6) & WORD_PAGE_MASK;
+        final long bit = 1L << idx;
+        if ((page[w] & bit) != 0) {
+            page[w] &= ~bit;
+            --count;
+        }
+    }
+
+    /**
+     * Removes all cells from the set. Allocated pages are kept for reuse.
+     */
+    void clear() {
+        for (var page : pages) {
+            if (page != null) {
+                Arrays.fill(page, 0L);
+            }
+        }
+        count = 0;
+    }
+
+    /**
+     * @param from Index to start searching from, inclusive.
+     * @return Index of the next cell in the set, or {@code -1} if there are none.
+     */
+    int nextSetBit(int from) {
+        if (from >= size) {
+            return -1;
+        }
+
+        int w = from >>> 6;
+        long word = word(w) & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                final int idx = (w << 6) + Long.numberOfTrailingZeros(word);
+                return idx < size ? idx : -1;
+            }
+            if (++w >= wordCount) {
+                return -1;
+            }
+            if (pages[w >>> WORD_PAGE_SHIFT] == null) {
+                // skip to the last word of the empty page
+                w |= WORD_PAGE_MASK;
+                word = 0;
+                continue;
+            }
+            word = word(w);
+        }
+    }
+
+    /**
+     * @param w Index of the word.
+     * @return Bits of the cells {@code [w * 64, w * 64 + 64)}.
+     */
+    long word(int w) {
+        final long[] page = pages[w >>> WORD_PAGE_SHIFT];
+        return page != null ? page[w & WORD_PAGE_MASK] : 0L;
+    }
+
+    /**
+     * Adds the cells whose bits are set in {@code bits} to the word at {@code w}.
+     *
+     * @param w    Index of the word.
+     * @param bits Bits of the cells to add.
+     */
+    void orWord(int w, long bits) {
+        if (bits == 0) {
+            return;
+        }
+
+        final long[] page = page(w >>> WORD_PAGE_SHIFT);
+        final int i = w & WORD_PAGE_MASK;
+        count += Long.bitCount(bits & ~page[i]);
+        page[i] |= bits;
+    }
+
+    /**
+     * @return Number of words backing the set.
+     */
+    int wordCount() {
+        return wordCount;
+    }
+
+    /**
+     * @return Number of cells in the set.
+     */
+    int cardinality() {
+        return count;
+    }
+
+    /**
+     * @return Maximum number of cells in the set.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param p Index of the page.
+     * @return Words of the page, allocated if needed.
+     */
+    private long[] page(int p) {
+        long[] page = pages[p];
+        if (page == null) {
+            page = new long[1 << WORD_PAGE_SHIFT];
+            pages[p] = page;
+        }
+        return page;
+    }
+}
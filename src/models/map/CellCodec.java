@@ -0,0 +1,212 @@
+package models.map;
+
+import controllers.Renderer;
+import models.map.cells.Cell;
+import models.map.cells.FillableCell;
+import models.map.cells.TerminationCell;
+import models.map.cells.Wall;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+import util.Direction;
+
+/**
+ * Encodes a cell into a single byte.
+ *
+ * <p>
+ * The layout of each byte is as follows:
+ * <ul>
+ * <li>Bits 0-1: Kind of the cell, as in {@link CellStorage#kind(int)}</li>
+ * <li>Bits 2-4: For fillable cells, {@code 0} if the cell is empty, otherwise the ordinal of the pipe shape plus one.
+ * For termination cells, bits 2-3 are the ordinal of the direction the cell is pointing to.</li>
+ * <li>Bit 5: Whether the pipe or termination cell is filled.</li>
+ * </ul>
+ * </p>
+ */
+final class CellCodec {
+
+    static final int KIND_MASK = 0b11;
+    static final int FILLED_BIT = 1 << 5;
+
+    private static final int DATA_SHIFT = 2;
+    private static final int SHAPE_MASK = 0b111 << DATA_SHIFT;
+    private static final int DIRECTION_MASK = 0b11 << DATA_SHIFT;
+
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    /**
+     * Number of distinct codes.
+     */
+    private static final int CODE_COUNT = FILLED_BIT << 1;
+    private static final Coordinate ORIGIN = new Coordinate(0, 0);
+
+    /**
+     * Characters of each code, or {@code 0} if not yet computed.
+     */
+    private static final char[] CHARS = new char[CODE_COUNT];
+    /**
+     * Images of each code, or {@code null} if not yet computed. Images are immutable, so racing threads at worst
+     * compute the same image twice.
+     */
+    private static final Renderer.CellImage[] IMAGES = new Renderer.CellImage[CODE_COUNT];
+
+    private CellCodec() {
+    }
+
+    /**
+     * @param code Code of the cell.
+     * @return Kind of the cell, as in {@link CellStorage#kind(int)}.
+     */
+    static int kind(int code) {
+        return code & KIND_MASK;
+    }
+
+    /**
+     * @param code Code of the cell.
+     * @return Shape of the pipe in the cell, or {@code null} if the cell is not a fillable cell or is empty.
+     */
+    @Nullable
+    static Pipe.Shape shape(int code) {
+        if ((code & KIND_MASK) != CellStorage.KIND_FILLABLE) {
+            return null;
+        }
+
+        final int shape = (code & SHAPE_MASK) >>> DATA_SHIFT;
+        return shape != 0 ? SHAPES[shape - 1] : null;
+    }
+
+    /**
+     * @param code Code of the cell.
+     * @return Direction the termination cell is pointing to, or {@code null} if the cell is not a termination cell.
+     */
+    @Nullable
+    static Direction direction(int code) {
+        final int kind = code & KIND_MASK;
+        if (kind != CellStorage.KIND_SOURCE && kind != CellStorage.KIND_SINK) {
+            return null;
+        }
+        return DIRECTIONS[(code & DIRECTION_MASK) >>> DATA_SHIFT];
+    }
+
+    /**
+     * @param code Code of the cell.
+     * @return Whether the pipe or termination cell is filled.
+     */
+    static boolean isFilled(int code) {
+        return (code & FILLED_BIT) != 0;
+    }
+
+    /**
+     * @param code Code of the cell.
+     * @return The character representation of the cell. Computed once per code, so no cell is created.
+     */
+    static char charOf(int code) {
+        final int key = code & (CODE_COUNT - 1);
+        char ch = CHARS[key];
+        if (ch == 0) {
+            ch = decode(key, ORIGIN).toSingleChar();
+            CHARS[key] = ch;
+        }
+        return ch;
+    }
+
+    /**
+     * @param code Code of the cell.
+     * @return Image of the pipe in the cell if it has one, otherwise the image of the cell. Computed once per code, so
+     * no cell is created.
+     */
+    @NotNull
+    static Renderer.CellImage imageOf(int code) {
+        final int key = code & (CODE_COUNT - 1);
+        var image = IMAGES[key];
+        if (image == null) {
+            final Pipe.Shape shape = shape(key);
+            image = shape != null ? Renderer.pipeImage(shape, isFilled(key)) : decode(key, ORIGIN).getImageRep();
+            IMAGES[key] = image;
+        }
+        return image;
+    }
+
+    /**
+     * @param code Code of the cell.
+     * @return Code of the cell after filling it. Walls and empty cells cannot be filled.
+     */
+    static byte fill(int code) {
+        if ((code & KIND_MASK) == CellStorage.KIND_WALL) {
+            return (byte) code;
+        }
+        if ((code & KIND_MASK) == CellStorage.KIND_FILLABLE && (code & SHAPE_MASK) == 0) {
+            return (byte) code;
+        }
+        return (byte) (code | FILLED_BIT);
+    }
+
+    /**
+     * @param shape Shape of an unfilled pipe in a fillable cell, or {@code null} if the cell is empty.
+     * @return Code of the fillable cell.
+     */
+    static byte encodeShape(@Nullable Pipe.Shape shape) {
+        if (shape == null) {
+            return CellStorage.KIND_FILLABLE;
+        }
+        return (byte) (CellStorage.KIND_FILLABLE | ((shape.ordinal() + 1) << DATA_SHIFT));
+    }
+
+    /**
+     * @param cell Cell to encode.
+     * @return Code of the cell.
+     */
+    static byte encode(@NotNull Cell cell) {
+        if (cell instanceof FillableCell) {
+            final var fCell = (FillableCell) cell;
+            final byte code = encodeShape(fCell.getShape());
+            return fCell.isFilled() ? (byte) (code | FILLED_BIT) : code;
+        } else if (cell instanceof TerminationCell) {
+            final var tCell = (TerminationCell) cell;
+            int code = tCell.type == TerminationCell.Type.SOURCE ? CellStorage.KIND_SOURCE : CellStorage.KIND_SINK;
+            code |= tCell.pointingTo.ordinal() << DATA_SHIFT;
+            if (tCell.isFilled()) {
+                code |= FILLED_BIT;
+            }
+            return (byte) code;
+        }
+        return CellStorage.KIND_WALL;
+    }
+
+    /**
+     * @param code  Code of the cell.
+     * @param coord Coordinate of the cell.
+     * @return A new {@link Cell} with the given code.
+     */
+    @NotNull
+    static Cell decode(int code, @NotNull Coordinate coord) {
+        switch (code & KIND_MASK) {
+            case CellStorage.KIND_FILLABLE: {
+                final Pipe.Shape shape = shape(code);
+                if (shape == null) {
+                    return new FillableCell(coord);
+                }
+
+                final var pipe = new Pipe(shape);
+                if ((code & FILLED_BIT) != 0) {
+                    pipe.setFilled();
+                }
+                return new FillableCell(coord, pipe);
+            }
+            case CellStorage.KIND_SOURCE:
+            case CellStorage.KIND_SINK: {
+                final Direction dir = DIRECTIONS[(code & DIRECTION_MASK) >>> DATA_SHIFT];
+                final var type = (code & KIND_MASK) == CellStorage.KIND_SOURCE
+                        ? TerminationCell.Type.SOURCE : TerminationCell.Type.SINK;
+                final var tCell = new TerminationCell(coord, dir, type);
+                if ((code & FILLED_BIT) != 0) {
+                    tCell.setFilled();
+                }
+                return tCell;
+            }
+            default:
+                return new Wall(coord);
+        }
+    }
+}
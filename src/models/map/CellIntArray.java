@@ -0,0 +1,122 @@
+package models.map;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size array of {@code int} values, one for each cell of a {@link Map}.
+ *
+ * <p>
+ * Cells are addressed by their index {@code row * cols + col}. As in {@link CellBitSet}, the values are stored in pages
+ * of {@link CellIntArray#PAGE_SIZE} cells, which are only allocated once one of their cells is set to a value other
+ * than the default value, so an array over a huge map only pays for the pages around the cells which are set.
+ * </p>
+ */
+class CellIntArray {
+
+    private static final int PAGE_SHIFT = 12;
+    /**
+     * Number of cells in each page.
+     */
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int size;
+    private final int defaultValue;
+    /**
+     * Values of each page, or {@code null} for pages where every cell holds the default value.
+     */
+    private final int[][] pages;
+
+    /**
+     * @param size         Number of cells.
+     * @param defaultValue Value of the cells which have not been set.
+     */
+    CellIntArray(int size, int defaultValue) {
+        this.size = size;
+        this.defaultValue = defaultValue;
+        this.pages = new int[(int) (((long) size + PAGE_MASK) >>> PAGE_SHIFT)][];
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @return Value of the cell.
+     */
+    int get(int idx) {
+        final int[] page = pages[idx >>> PAGE_SHIFT];
+        return page != null ? page[idx & PAGE_MASK] : defaultValue;
+    }
+
+    /**
+     * @param idx   Index of the cell.
+     * @param value New value of the cell.
+     */
+    void set(int idx, int value) {
+        final int[] page = pages[idx >>> PAGE_SHIFT];
+        if (page != null) {
+            page[idx & PAGE_MASK] = value;
+        } else if (value != defaultValue) {
+            page(idx >>> PAGE_SHIFT)[idx & PAGE_MASK] = value;
+        }
+    }
+
+    /**
+     * @param idx   Index of the cell.
+     * @param delta Amount to add to the value of the cell.
+     */
+    void add(int idx, int delta) {
+        set(idx, get(idx) + delta);
+    }
+
+    /**
+     * Resets every cell to the default value, releasing all pages.
+     */
+    void clear() {
+        Arrays.fill(pages, null);
+    }
+
+    /**
+     * Resets every cell which is not in the set to the default value. Only the allocated pages are visited.
+     *
+     * @param cells Cells whose values are kept.
+     */
+    void retain(@NotNull CellBitSet cells) {
+        for (int p = 0; p < pages.length; ++p) {
+            final int[] page = pages[p];
+            if (page == null) {
+                continue;
+            }
+
+            final int base = p << PAGE_SHIFT;
+            for (int i = 0; i < PAGE_SIZE; ++i) {
+                if (base + i >= size || !cells.get(base + i)) {
+                    page[i] = defaultValue;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of cells.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param p Index of the page.
+     * @return Values of the page, allocated if needed.
+     */
+    private int[] page(int p) {
+        int[] page = pages[p];
+        if (page == null) {
+            page = new int[PAGE_SIZE];
+            if (defaultValue != 0) {
+                Arrays.fill(page, defaultValue);
+            }
+            pages[p] = page;
+        }
+        return page;
+    }
+}
@@ -0,0 +1,153 @@
+package models.map;
+
+import models.map.cells.Cell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Direction;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Backing storage for the cells of a {@link Map}.
+ *
+ * <p>
+ * Cells are addressed by their index {@code row * cols + col}. The flow and path algorithms of {@link Map} only use
+ * the primitive accessors, while {@link Cell} objects are only requested for rendering, display and serialization.
+ * </p>
+ */
+interface CellStorage {
+
+    int KIND_WALL = 0;
+    int KIND_FILLABLE = 1;
+    int KIND_SOURCE = 2;
+    int KIND_SINK = 3;
+
+    /**
+     * @return Number of rows.
+     */
+    int rows();
+
+    /**
+     * @return Number of columns.
+     */
+    int cols();
+
+    /**
+     * @param idx Index of the cell.
+     * @return One of {@link CellStorage#KIND_WALL}, {@link CellStorage#KIND_FILLABLE}, {@link CellStorage#KIND_SOURCE}
+     * or {@link CellStorage#KIND_SINK}.
+     */
+    int kind(int idx);
+
+    /**
+     * @param idx Index of the cell.
+     * @return Shape of the pipe in the cell, or {@code null} if the cell is not a fillable cell or is empty.
+     */
+    @Nullable
+    Pipe.Shape shape(int idx);
+
+    /**
+     * @param idx Index of the cell.
+     * @return Connections of the pipe in the cell as in {@link Pipe.Shape#mask()}, or {@code 0} if the cell does not
+     * contain a pipe.
+     */
+    default int connections(int idx) {
+        final Pipe.Shape shape = shape(idx);
+        return shape != null ? shape.mask() : 0;
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @return Direction the termination cell at the index is pointing to, or {@code null} if the cell is not a
+     * termination cell.
+     */
+    @Nullable
+    default Direction pointingTo(int idx) {
+        return CellCodec.direction(code(idx));
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @return Whether the pipe or termination cell at the index is filled.
+     */
+    boolean isFilled(int idx);
+
+    /**
+     * Sets the pipe or termination cell at the index as filled.
+     *
+     * @param idx Index of the cell.
+     */
+    void setFilled(int idx);
+
+    /**
+     * Replaces the content of a fillable cell with an unfilled pipe.
+     *
+     * @param idx   Index of the cell.
+     * @param shape Shape of the new pipe, or {@code null} to empty the cell.
+     */
+    void setPipe(int idx, @Nullable Pipe.Shape shape);
+
+    /**
+     * Replaces a cell.
+     *
+     * @param idx  Index of the cell.
+     * @param cell New cell.
+     */
+    void setCell(int idx, @NotNull Cell cell);
+
+    /**
+     * @param idx Index of the cell.
+     * @return A {@link Cell} representing the cell at the index. Depending on the storage, this may be created on
+     * demand, so changes to the returned cell are not guaranteed to be reflected in the storage.
+     */
+    @NotNull
+    Cell getCell(int idx);
+
+    /**
+     * @return A 2D cell array representing the storage.
+     */
+    @NotNull
+    default Cell[][] toCells() {
+        final var cells = new Cell[rows()][cols()];
+        for (int r = 0; r < rows(); ++r) {
+            for (int c = 0; c < cols(); ++c) {
+                cells[r][c] = getCell(r * cols() + c);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @return The cell encoded as in {@link CellCodec}.
+     */
+    default byte code(int idx) {
+        return CellCodec.encode(getCell(idx));
+    }
+
+    /**
+     * Calls the action with the index of every cell which may differ from the default map, which has walls around the
+     * border and empty fillable cells everywhere else. By default, every cell is visited.
+     *
+     * @param action Action to call with the index of each cell.
+     */
+    default void forEachTouchedCell(@NotNull IntConsumer action) {
+        final int size = rows() * cols();
+        for (int idx = 0; idx < size; ++idx) {
+            action.accept(idx);
+        }
+    }
+
+    /**
+     * @param row      First row of the region.
+     * @param col      First column of the region.
+     * @param rowCount Number of rows of the region.
+     * @param colCount Number of columns of the region.
+     * @return Whether every cell of the region is known to hold the default map without reading the cells. By default,
+     * this is never known.
+     */
+    default boolean isUntouched(int row, int col, int rowCount, int colCount) {
+        return false;
+    }
+}
@@ -0,0 +1,316 @@
+package models.map;
+
+import models.map.cells.TerminationCell;
+import org.jetbrains.annotations.NotNull;
+import util.Direction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Field of the round in which the water reaches each cell of a {@link Map}, assuming no further pipes are placed.
+ *
+ * <p>
+ * For a filled cell, its arrival round is the round in which it was filled. For an unfilled cell, it is the number of
+ * completed rounds plus the length of the shortest chain of connected, unfilled pipes leading to it from a filled
+ * cell or from a source which has not started flowing yet. These are exactly the rounds in which the
+ * {@link FlowEngine} fills the cells.
+ * </p>
+ * <p>
+ * Placing a pipe can only lower arrival rounds, so placements are relaxed outwards from the new pipe. Removing or
+ * replacing a pipe can raise them, so the field is marked as stale and recomputed on the next query.
+ * </p>
+ */
+class FlowArrival {
+
+    /**
+     * Arrival round of cells which the water cannot reach.
+     */
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final CellStorage storage;
+    @NotNull
+    private final FlowEngine flow;
+    @NotNull
+    private final List<TerminationCell> sources;
+    @NotNull
+    private final List<TerminationCell> sinks;
+
+    /**
+     * Arrival round of each cell. Only the pages around reachable cells are allocated.
+     */
+    @NotNull
+    private final CellIntArray arrival;
+    /**
+     * Number of unfilled cells for each arrival round, indexed by {@code round % counts.size()}.
+     *
+     * <p>
+     * Arrival rounds of unfilled cells always lie within {@code (filledDistance, filledDistance + rows * cols]}, so
+     * the entries never collide. Only the pages around the rounds of reachable cells are allocated.
+     * </p>
+     */
+    @NotNull
+    private final CellIntArray counts;
+    /**
+     * Upper bound of the arrival rounds of unfilled cells.
+     */
+    private int maxArrival = 0;
+
+    @NotNull
+    private int[] queue = new int[64];
+    private boolean stale = true;
+
+    /**
+     * @param storage Cells of the map.
+     * @param flow    Flow of the map.
+     * @param sources Source cells of the map.
+     * @param sinks   Sink cells of the map.
+     */
+    FlowArrival(@NotNull CellStorage storage, @NotNull FlowEngine flow,
+                @NotNull List<TerminationCell> sources, @NotNull List<TerminationCell> sinks) {
+        this.rows = storage.rows();
+        this.cols = storage.cols();
+        this.storage = storage;
+        this.flow = flow;
+        this.sources = sources;
+        this.sinks = sinks;
+
+        arrival = new CellIntArray(rows * cols, UNREACHED);
+        counts = new CellIntArray(rows * cols + 1, 0);
+    }
+
+    /**
+     * Notifies that a pipe has been placed in a previously empty cell.
+     *
+     * @param idx Index of the cell.
+     */
+    void onPipePlaced(int idx) {
+        if (stale || flow.getFilled().get(idx)) {
+            return;
+        }
+
+        final int round = flow.getFilledDistance();
+        final int mask = storage.connections(idx);
+        int best = UNREACHED;
+
+        if (flow.getSources().isWaitingTarget(idx, mask)) {
+            best = round + 1;
+        }
+        for (Direction d : DIRECTIONS) {
+            final int n = connectedNeighbour(idx, mask, d);
+            if (n == -1) {
+                continue;
+            }
+
+            if (flow.getFilled().get(n)) {
+                best = Math.min(best, round + 1);
+            } else if (arrival.get(n) != UNREACHED) {
+                best = Math.min(best, arrival.get(n) + 1);
+            }
+        }
+
+        if (best < arrival.get(idx)) {
+            setArrival(idx, best);
+            queue[0] = idx;
+            relax(1);
+        }
+    }
+
+    /**
+     * Notifies that a pipe has been removed or replaced.
+     */
+    void onPipeChanged() {
+        stale = true;
+    }
+
+    /**
+     * Notifies that a cell has been filled.
+     *
+     * @param idx   Index of the cell.
+     * @param round Round in which the cell is filled.
+     */
+    void onFilled(int idx, int round) {
+        if (stale) {
+            return;
+        }
+
+        if (arrival.get(idx) != UNREACHED) {
+            counts.add(arrival.get(idx) % counts.size(), -1);
+        }
+        arrival.set(idx, round);
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @return Arrival round of the cell, or {@link FlowArrival#UNREACHED} if the water cannot reach the cell.
+     */
+    int arrivalOf(int idx) {
+        ensureFresh();
+
+        for (var source : sources) {
+            if (idx == indexOf(source)) {
+                return 0;
+            }
+        }
+        for (var sink : sinks) {
+            if (idx == indexOf(sink)) {
+                return sinkArrival(sink);
+            }
+        }
+        return arrival.get(idx);
+    }
+
+    /**
+     * @return Number of rounds until a round fills no cells, counted from the last completed round.
+     */
+    int roundsUntilSpill() {
+        ensureFresh();
+
+        final int round = flow.getFilledDistance();
+        while (maxArrival > round && counts.get(maxArrival % counts.size()) == 0) {
+            --maxArrival;
+        }
+        return Math.max(maxArrival, round) + 1 - round;
+    }
+
+    /**
+     * @return Number of rounds until the water reaches every sink counted from the last completed round, or {@code -1}
+     * if the water cannot reach some sink.
+     */
+    int roundsUntilSinkReached() {
+        ensureFresh();
+
+        int latest = 0;
+        for (var sink : sinks) {
+            final int sinkArrival = sinkArrival(sink);
+            if (sinkArrival == UNREACHED) {
+                return -1;
+            }
+            latest = Math.max(latest, sinkArrival);
+        }
+        return Math.max(0, latest - flow.getFilledDistance());
+    }
+
+    private int sinkArrival(@NotNull TerminationCell sink) {
+        final int last = indexOf(sink) - sink.pointingTo.getRowOffset() * cols - sink.pointingTo.getColOffset();
+        if ((storage.connections(last) & sink.pointingTo.mask()) == 0 || arrival.get(last) == UNREACHED) {
+            return UNREACHED;
+        }
+        return arrival.get(last) + 1;
+    }
+
+    private void ensureFresh() {
+        if (stale) {
+            recompute();
+        }
+    }
+
+    /**
+     * Recomputes the arrival round of every unfilled cell.
+     */
+    private void recompute() {
+        final CellBitSet filled = flow.getFilled();
+        final int round = flow.getFilledDistance();
+
+        counts.clear();
+        arrival.retain(filled);
+        maxArrival = round;
+        stale = false;
+
+        int tail = 0;
+        final FlowSources waiting = flow.getSources();
+        for (int i = 0; i < waiting.waitingCount(); ++i) {
+            final int first = waiting.waitingTarget(i);
+            if (!filled.get(first) && arrival.get(first) == UNREACHED
+                    && (storage.connections(first) & waiting.waitingEntry(i)) != 0) {
+                setArrival(first, round + 1);
+                queue = append(queue, tail++, first);
+            }
+        }
+        for (int idx = filled.nextSetBit(0); idx != -1; idx = filled.nextSetBit(idx + 1)) {
+            final int mask = storage.connections(idx);
+            for (Direction d : DIRECTIONS) {
+                final int n = connectedNeighbour(idx, mask, d);
+                if (n != -1 && !filled.get(n) && arrival.get(n) == UNREACHED) {
+                    setArrival(n, round + 1);
+                    queue = append(queue, tail++, n);
+                }
+            }
+        }
+
+        relax(tail);
+    }
+
+    /**
+     * Lowers the arrival rounds of cells connected to the cells in the queue, in breadth-first order.
+     *
+     * @param tail Number of cells initially in the queue.
+     */
+    private void relax(int tail) {
+        final CellBitSet filled = flow.getFilled();
+
+        int head = 0;
+        while (head != tail) {
+            final int idx = queue[head++];
+            final int mask = storage.connections(idx);
+            for (Direction d : DIRECTIONS) {
+                final int n = connectedNeighbour(idx, mask, d);
+                if (n == -1 || filled.get(n) || arrival.get(n) <= arrival.get(idx) + 1) {
+                    continue;
+                }
+
+                setArrival(n, arrival.get(idx) + 1);
+                queue = append(queue, tail++, n);
+            }
+        }
+    }
+
+    private void setArrival(int idx, int value) {
+        if (arrival.get(idx) != UNREACHED) {
+            counts.add(arrival.get(idx) % counts.size(), -1);
+        }
+        arrival.set(idx, value);
+        counts.add(value % counts.size(), 1);
+        maxArrival = Math.max(maxArrival, value);
+    }
+
+    /**
+     * @param idx  Index of a cell.
+     * @param mask Connections of the cell.
+     * @param d    Direction to check.
+     * @return Index of the neighbour in direction {@code d} if both cells have an opening towards each other, or
+     * {@code -1} otherwise.
+     */
+    private int connectedNeighbour(int idx, int mask, @NotNull Direction d) {
+        if ((mask & d.mask()) == 0) {
+            return -1;
+        }
+
+        final int r = idx / cols + d.getRowOffset();
+        final int c = idx % cols + d.getColOffset();
+        if (r < 0 || r >= rows || c < 0 || c >= cols) {
+            return -1;
+        }
+
+        final int n = r * cols + c;
+        return (storage.connections(n) & d.getOpposite().mask()) != 0 ? n : -1;
+    }
+
+    private int indexOf(@NotNull TerminationCell cell) {
+        return cell.coord.row * cols + cell.coord.col;
+    }
+
+    @NotNull
+    private static int[] append(@NotNull int[] buffer, int pos, int value) {
+        if (pos == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[pos] = value;
+        return buffer;
+    }
+}
@@ -0,0 +1,88 @@
+package models.map;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Water flow of a {@link Map}.
+ *
+ * <p>
+ * Cells are addressed by their index {@code row * cols + col}. In each round, every unfilled pipe which has an opening
+ * towards a filled neighbour, which in turn has an opening towards it, is filled. Implementations must produce exactly
+ * the same filled cells for the same sequence of calls.
+ * </p>
+ * <p>
+ * A map may have several sources, whose flows advance together. Each source fills the cell it points to in the first
+ * round in which that cell has a pipe with an opening back towards the source. See {@link FlowSources}.
+ * </p>
+ */
+interface FlowEngine {
+
+    /**
+     * Receives cells as they are filled by the flow.
+     */
+    @FunctionalInterface
+    interface FillListener {
+
+        /**
+         * Called before the cell is marked as filled in the storage.
+         *
+         * @param idx   Index of the filled cell.
+         * @param round Round in which the cell is filled.
+         */
+        void onFilled(int idx, int round);
+    }
+
+    /**
+     * Notifies the flow that a pipe has been placed or replaced at (row, col).
+     *
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     */
+    void onPipePlaced(int row, int col);
+
+    /**
+     * Notifies the flow that the pipe at (row, col) has been removed.
+     *
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     */
+    void onPipeRemoved(int row, int col);
+
+    /**
+     * Fills all pipes that are within {@code distance} units from the sources.
+     *
+     * @param distance Distance to fill pipes.
+     * @see Map#fillTiles(int)
+     */
+    void fill(int distance);
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Whether the cell has been filled by the flow.
+     */
+    boolean isFilled(int row, int col);
+
+    /**
+     * @return Sources which have not started flowing yet. The returned object is owned by this flow and must not be
+     * modified.
+     */
+    @NotNull
+    FlowSources getSources();
+
+    /**
+     * @return The set of filled cells. The returned set is owned by this flow and must not be modified.
+     */
+    @NotNull
+    CellBitSet getFilled();
+
+    /**
+     * @return The last distance which has been filled, i.e. the number of completed rounds.
+     */
+    int getFilledDistance();
+
+    /**
+     * @return Number of cells filled during the last round.
+     */
+    int getLastRoundFilled();
+}
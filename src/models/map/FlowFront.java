@@ -0,0 +1,312 @@
+package models.map;
+
+import models.map.cells.TerminationCell;
+import org.jetbrains.annotations.NotNull;
+import util.Direction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wavefront-based water flow for a {@link Map}.
+ *
+ * <p>
+ * Only the cells filled in the previous round are expanded in the next round, so a round costs time proportional to
+ * the number of newly filled cells. Cells are addressed by their index {@code row * cols + col}. The wavefront buffers
+ * grow with the size of the wavefront rather than the size of the map, and are reused across rounds.
+ * </p>
+ * <p>
+ * A pipe placed next to a cell which has already been filled is remembered as "pending", and is checked against its
+ * filled neighbours in the next round. This keeps the result identical to re-expanding every filled cell each round.
+ * </p>
+ */
+class FlowFront implements FlowEngine {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final CellStorage storage;
+    @NotNull
+    private final FillListener listener;
+    @NotNull
+    private final FlowSources sources;
+
+    /**
+     * Cells which have been filled.
+     */
+    @NotNull
+    private final CellBitSet filled;
+
+    /**
+     * Cells filled during the last round.
+     */
+    @NotNull
+    private int[] front = new int[INITIAL_CAPACITY];
+    private int frontSize = 0;
+    /**
+     * Cells filled during the current round.
+     */
+    @NotNull
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int nextSize = 0;
+
+    /**
+     * Pipes placed next to already-filled cells since the last round.
+     */
+    @NotNull
+    private int[] pending = new int[INITIAL_CAPACITY];
+    private int pendingSize = 0;
+    @NotNull
+    private final CellBitSet isPending;
+
+    /**
+     * The last distance which has been filled.
+     */
+    private int filledDistance = 0;
+    /**
+     * Number of cells filled during the last round.
+     */
+    private int lastRoundFilled = 0;
+
+    /**
+     * @param storage  Cells of the map. The storage is read on every round, so later changes to it are observed.
+     * @param sources  Source cells of the map.
+     * @param listener Receiver of filled cells.
+     */
+    FlowFront(@NotNull CellStorage storage, @NotNull List<TerminationCell> sources, @NotNull FillListener listener) {
+        this.rows = storage.rows();
+        this.cols = storage.cols();
+        this.storage = storage;
+        this.listener = listener;
+        this.sources = new FlowSources(rows, cols, sources);
+
+        filled = new CellBitSet(rows * cols);
+        isPending = new CellBitSet(rows * cols);
+    }
+
+    @Override
+    public void onPipePlaced(int row, int col) {
+        final int idx = row * cols + col;
+        if (filled.get(idx) || isPending.get(idx)) {
+            return;
+        }
+
+        for (Direction d : DIRECTIONS) {
+            final int n = neighbour(idx, d);
+            if (n != -1 && filled.get(n)) {
+                isPending.set(idx);
+                pending = append(pending, pendingSize++, idx);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onPipeRemoved(int row, int col) {
+        // an empty cell in the pending list is skipped when it is validated
+    }
+
+    @Override
+    public void fill(int distance) {
+        while (filledDistance < distance) {
+            lastRoundFilled = 0;
+
+            if (filledDistance == 0) {
+                if (!fillFirst()) {
+                    return;
+                }
+            } else if (frontSize == 0 && pendingSize == 0 && !sources.hasWaiting()) {
+                // nothing can be filled in any of the remaining rounds
+                filledDistance = distance;
+                return;
+            } else {
+                fillRound();
+            }
+
+            ++filledDistance;
+        }
+    }
+
+    /**
+     * Fills the cells which the sources are pointing to.
+     *
+     * @return {@code true} if any cell is filled.
+     */
+    private boolean fillFirst() {
+        nextSize = 0;
+        fillReleasedSources();
+        if (nextSize == 0) {
+            return false;
+        }
+
+        final int[] tmp = front;
+        front = next;
+        next = tmp;
+        frontSize = nextSize;
+        lastRoundFilled = nextSize;
+        return true;
+    }
+
+    /**
+     * Fills the cells pointed to by the waiting sources which can start flowing, and adds them to {@link FlowFront#next}.
+     */
+    private void fillReleasedSources() {
+        final int released = sources.release(storage);
+        for (int i = 0; i < released; ++i) {
+            final int idx = sources.releasedTarget(i);
+            if (!filled.get(idx)) {
+                markFilled(idx);
+                next = append(next, nextSize++, idx);
+            }
+        }
+    }
+
+    /**
+     * Fills every pipe connected to a cell filled before this round.
+     */
+    private void fillRound() {
+        nextSize = 0;
+
+        // Pending pipes are validated before anything is filled this round, so that they can only be reached from
+        // cells filled in previous rounds.
+        int validPending = 0;
+        for (int i = 0; i < pendingSize; ++i) {
+            final int idx = pending[i];
+            isPending.clear(idx);
+            if (!filled.get(idx) && isConnectedToFilled(idx)) {
+                pending[validPending++] = idx;
+            }
+        }
+        for (int i = 0; i < validPending; ++i) {
+            final int idx = pending[i];
+            if (!filled.get(idx)) {
+                markFilled(idx);
+                next = append(next, nextSize++, idx);
+            }
+        }
+        pendingSize = 0;
+        fillReleasedSources();
+
+        for (int i = 0; i < frontSize; ++i) {
+            final int idx = front[i];
+            final int mask = storage.connections(idx);
+            if (mask == 0) {
+                throw new IllegalStateException();
+            }
+
+            for (Direction d : DIRECTIONS) {
+                if ((mask & d.mask()) == 0) {
+                    continue;
+                }
+
+                final int n = neighbour(idx, d);
+                if (n == -1 || filled.get(n)) {
+                    continue;
+                }
+                if ((storage.connections(n) & d.getOpposite().mask()) == 0) {
+                    continue;
+                }
+
+                markFilled(n);
+                next = append(next, nextSize++, n);
+            }
+        }
+
+        final int[] tmp = front;
+        front = next;
+        next = tmp;
+        frontSize = nextSize;
+        lastRoundFilled = nextSize;
+    }
+
+    /**
+     * @param idx Index of an unfilled cell.
+     * @return Whether the pipe in the cell connects to a pipe in an already-filled neighbour.
+     */
+    private boolean isConnectedToFilled(int idx) {
+        final int mask = storage.connections(idx);
+        for (Direction d : DIRECTIONS) {
+            if ((mask & d.mask()) == 0) {
+                continue;
+            }
+
+            final int n = neighbour(idx, d);
+            if (n != -1 && filled.get(n) && (storage.connections(n) & d.getOpposite().mask()) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markFilled(int idx) {
+        listener.onFilled(idx, filledDistance + 1);
+        storage.setFilled(idx);
+        filled.set(idx);
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @param d   Direction to step towards.
+     * @return Index of the neighbouring cell, or {@code -1} if it is outside the map.
+     */
+    private int neighbour(int idx, @NotNull Direction d) {
+        final int row = idx / cols;
+        final int col = idx % cols;
+        switch (d) {
+            case UP:
+                return row > 0 ? idx - cols : -1;
+            case DOWN:
+                return row < rows - 1 ? idx + cols : -1;
+            case LEFT:
+                return col > 0 ? idx - 1 : -1;
+            case RIGHT:
+                return col < cols - 1 ? idx + 1 : -1;
+            default:
+                throw new IllegalStateException("Unknown direction");
+        }
+    }
+
+    /**
+     * Stores {@code value} at {@code pos}, growing the buffer if it is full.
+     *
+     * @return The buffer containing the value.
+     */
+    @NotNull
+    private static int[] append(@NotNull int[] buffer, int pos, int value) {
+        if (pos == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[pos] = value;
+        return buffer;
+    }
+
+    @NotNull
+    @Override
+    public FlowSources getSources() {
+        return sources;
+    }
+
+    @Override
+    public boolean isFilled(int row, int col) {
+        return filled.get(row * cols + col);
+    }
+
+    @NotNull
+    @Override
+    public CellBitSet getFilled() {
+        return filled;
+    }
+
+    @Override
+    public int getFilledDistance() {
+        return filledDistance;
+    }
+
+    @Override
+    public int getLastRoundFilled() {
+        return lastRoundFilled;
+    }
+}
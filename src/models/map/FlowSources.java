@@ -0,0 +1,139 @@
+package models.map;
+
+import models.map.cells.TerminationCell;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Sources of a {@link Map} which have not started flowing yet.
+ *
+ * <p>
+ * A source starts flowing in the first round in which the cell it points to has a pipe with an opening back towards
+ * the source. Until then, it is "waiting", and is checked once per round. Sources which point outside the map never
+ * flow.
+ * </p>
+ */
+final class FlowSources {
+
+    /**
+     * Index of the cell each source is pointing to. The first {@link FlowSources#waiting} entries are the waiting
+     * sources, followed by the sources released in the last call to {@link FlowSources#release(CellStorage)}.
+     */
+    @NotNull
+    private final int[] targets;
+    /**
+     * Opening which the pipe in the target cell needs, as in {@link util.Direction#mask()}.
+     */
+    @NotNull
+    private final int[] entries;
+    private int waiting;
+    private int released = 0;
+
+    /**
+     * @param rows    Number of rows of the map.
+     * @param cols    Number of columns of the map.
+     * @param sources Source cells of the map.
+     */
+    FlowSources(int rows, int cols, @NotNull List<TerminationCell> sources) {
+        targets = new int[sources.size()];
+        entries = new int[sources.size()];
+
+        int count = 0;
+        for (var source : sources) {
+            final int row = source.coord.row + source.pointingTo.getRowOffset();
+            final int col = source.coord.col + source.pointingTo.getColOffset();
+            if (row < 0 || row >= rows || col < 0 || col >= cols) {
+                continue;
+            }
+
+            targets[count] = row * cols + col;
+            entries[count] = source.pointingTo.getOpposite().mask();
+            ++count;
+        }
+        waiting = count;
+    }
+
+    /**
+     * Releases every waiting source whose target cell now has a pipe with an opening back towards the source.
+     *
+     * @param storage Cells of the map.
+     * @return Number of released sources. Their target cells are returned by {@link FlowSources#releasedTarget(int)}.
+     */
+    int release(@NotNull CellStorage storage) {
+        released = 0;
+        int i = 0;
+        while (i < waiting) {
+            if ((storage.connections(targets[i]) & entries[i]) != 0) {
+                --waiting;
+                swap(i, waiting);
+                ++released;
+            } else {
+                ++i;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * @param i Index of a source released in the last call to {@link FlowSources#release(CellStorage)}.
+     * @return Index of the cell the source is pointing to.
+     */
+    int releasedTarget(int i) {
+        return targets[waiting + i];
+    }
+
+    /**
+     * @return Whether any source is still waiting.
+     */
+    boolean hasWaiting() {
+        return waiting != 0;
+    }
+
+    /**
+     * @param idx  Index of a cell.
+     * @param mask Connections of the pipe in the cell.
+     * @return Whether a waiting source points to the cell, and the pipe has an opening back towards it.
+     */
+    boolean isWaitingTarget(int idx, int mask) {
+        for (int i = 0; i < waiting; ++i) {
+            if (targets[i] == idx && (mask & entries[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of waiting sources.
+     */
+    int waitingCount() {
+        return waiting;
+    }
+
+    /**
+     * @param i Index of a waiting source, less than {@link FlowSources#waitingCount()}.
+     * @return Index of the cell the source is pointing to.
+     */
+    int waitingTarget(int i) {
+        return targets[i];
+    }
+
+    /**
+     * @param i Index of a waiting source, less than {@link FlowSources#waitingCount()}.
+     * @return Opening which the pipe in the target cell needs.
+     */
+    int waitingEntry(int i) {
+        return entries[i];
+    }
+
+    private void swap(int a, int b) {
+        final int target = targets[a];
+        targets[a] = targets[b];
+        targets[b] = target;
+
+        final int entry = entries[a];
+        entries[a] = entries[b];
+        entries[b] = entry;
+    }
+}
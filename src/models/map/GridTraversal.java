@@ -0,0 +1,222 @@
+package models.map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Direction;
+
+import java.util.Arrays;
+
+/**
+ * Breadth-first traversal over a grid of {@code rows x cols} cells.
+ *
+ * <p>
+ * Cells are addressed by their index {@code row * cols + col}. All buffers are allocated once per instance and reused
+ * by every query, and visited cells are tracked with a per-query stamp so that the buffers never need to be cleared.
+ * A single instance must not be used by more than one thread at a time.
+ * </p>
+ */
+public class GridTraversal {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Decides whether a traversal may step from one cell to a neighbouring cell.
+     */
+    @FunctionalInterface
+    public interface StepFilter {
+
+        /**
+         * @param from Index of the current cell.
+         * @param dir  Direction of the step.
+         * @param to   Index of the neighbouring cell.
+         * @return Whether the step is allowed.
+         */
+        boolean canStep(int from, @NotNull Direction dir, int to);
+    }
+
+    /**
+     * Receives cells in the order they are visited by {@link GridTraversal#bfs(int, StepFilter, Visitor)}.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * @param idx      Index of the visited cell.
+         * @param distance Number of steps from the start cell.
+         * @return {@code false} to stop the traversal.
+         */
+        boolean visit(int idx, int distance);
+    }
+
+    private final int rows;
+    private final int cols;
+
+    @NotNull
+    private final int[] queue;
+    @NotNull
+    private final int[] visitedStamp;
+    @NotNull
+    private final int[] distance;
+    @NotNull
+    private final int[] parent;
+    private int stamp = 0;
+
+    /**
+     * @param rows Number of rows of the grid.
+     * @param cols Number of columns of the grid.
+     */
+    public GridTraversal(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+
+        final int size = rows * cols;
+        queue = new int[size];
+        visitedStamp = new int[size];
+        distance = new int[size];
+        parent = new int[size];
+    }
+
+    /**
+     * @return Number of rows of the grid.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Number of columns of the grid.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Index of the cell.
+     */
+    public int indexOf(int row, int col) {
+        return row * cols + col;
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @param d   Direction to step towards.
+     * @return Index of the neighbouring cell, or {@code -1} if it is outside the grid.
+     */
+    public int neighbour(int idx, @NotNull Direction d) {
+        final int r = idx / cols + d.getRowOffset();
+        final int c = idx % cols + d.getColOffset();
+        if (r < 0 || r >= rows || c < 0 || c >= cols) {
+            return -1;
+        }
+        return r * cols + c;
+    }
+
+    /**
+     * Visits every cell reachable from {@code start} in breadth-first order.
+     *
+     * @param start   Index of the start cell.
+     * @param filter  Which steps are allowed.
+     * @param visitor Receiver of visited cells, or {@code null} if only the distances are needed.
+     * @return Number of cells visited, including the start cell.
+     */
+    public int bfs(int start, @NotNull StepFilter filter, @Nullable Visitor visitor) {
+        return search(start, -1, filter, visitor);
+    }
+
+    /**
+     * @param from   Index of the start cell.
+     * @param to     Index of the target cell.
+     * @param filter Which steps are allowed.
+     * @return Whether {@code to} can be reached from {@code from}.
+     */
+    public boolean isReachable(int from, int to, @NotNull StepFilter filter) {
+        search(from, to, filter, null);
+        return isVisited(to);
+    }
+
+    /**
+     * Finds a shortest path between two cells.
+     *
+     * @param from   Index of the start cell.
+     * @param to     Index of the target cell.
+     * @param filter Which steps are allowed.
+     * @param path   If not {@code null}, receives the indices of the cells on the path, starting with {@code from} and
+     *               ending with {@code to}. It must be large enough to hold the path.
+     * @return Number of steps on the path, or {@code -1} if {@code to} cannot be reached.
+     */
+    public int shortestPath(int from, int to, @NotNull StepFilter filter, @Nullable int[] path) {
+        search(from, to, filter, null);
+        if (!isVisited(to)) {
+            return -1;
+        }
+
+        final int length = distance[to];
+        if (path != null) {
+            int idx = to;
+            for (int i = length; i >= 0; --i) {
+                path[i] = idx;
+                idx = parent[idx];
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @return Number of steps from the start cell of the last query to {@code idx}, or {@code -1} if the cell was not
+     * reached by the last query.
+     */
+    public int distanceOf(int idx) {
+        return isVisited(idx) ? distance[idx] : -1;
+    }
+
+    private boolean isVisited(int idx) {
+        return visitedStamp[idx] == stamp;
+    }
+
+    /**
+     * Runs a breadth-first search from {@code start}, stopping early once {@code target} is reached.
+     *
+     * @param target Index of the cell to stop at, or {@code -1} to visit all reachable cells.
+     * @return Number of cells visited.
+     */
+    private int search(int start, int target, @NotNull StepFilter filter, @Nullable Visitor visitor) {
+        if (++stamp == 0) {
+            Arrays.fill(visitedStamp, 0);
+            stamp = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visitedStamp[start] = stamp;
+        distance[start] = 0;
+        parent[start] = -1;
+
+        while (head != tail) {
+            final int idx = queue[head++];
+            if (visitor != null && !visitor.visit(idx, distance[idx])) {
+                break;
+            }
+            if (idx == target) {
+                break;
+            }
+
+            for (Direction d : DIRECTIONS) {
+                final int n = neighbour(idx, d);
+                if (n == -1 || visitedStamp[n] == stamp || !filter.canStep(idx, d, n)) {
+                    continue;
+                }
+
+                visitedStamp[n] = stamp;
+                distance[n] = distance[idx] + 1;
+                parent[n] = idx;
+                queue[tail++] = n;
+            }
+        }
+
+        return head;
+    }
+}
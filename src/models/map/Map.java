@@ -10,31 +10,117 @@ import models.map.cells.TerminationCell;
 import models.map.cells.Wall;
 import models.pipes.Pipe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import util.Coordinate;
 import util.Direction;
+import util.GenerationContext;
 import util.StringUtils;
+import util.Zobrist;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Map of the game.
  */
 public class Map {
 
+    /**
+     * Maximum number of cells of a map, so the index {@code row * cols + col} of every cell and its neighbours fits in
+     * an {@code int}. For a square map, this is 32768 x 32768 cells.
+     */
+    public static final int MAX_CELLS = 1 << 30;
+
+    private static final int HASH_TABLE_SHAPE = 0;
+    private static final int HASH_TABLE_FILLED = 1;
+
     private final int rows;
     private final int cols;
     @NotNull
-    private final Cell[][] cells;
+    private final CellStorage storage;
 
-    private TerminationCell sourceCell;
-    private TerminationCell sinkCell;
+    /**
+     * Source cells, which the water flows out of.
+     */
+    @NotNull
+    private final List<TerminationCell> sources;
+    /**
+     * Sink cells, which must all be connected to a source to win.
+     */
+    @NotNull
+    private final List<TerminationCell> sinks;
 
     @NotNull
-    private final Set<Coordinate> filledTiles = new HashSet<>();
-    private int prevFilledTiles = 0;
-    private Integer prevFilledDistance;
+    private final FlowEngine flow;
+    @NotNull
+    private final PipeConnectivity connectivity;
+    /**
+     * Arrival rounds of the water. Created on first use.
+     */
+    @Nullable
+    private FlowArrival arrival;
+    /**
+     * Chunks of cells which have changed since {@link Map#snapshot} was published.
+     */
+    @NotNull
+    private final CellBitSet dirtyChunks;
+    /**
+     * Latest published snapshot of the cells.
+     */
+    @NotNull
+    private volatile MapSnapshot snapshot;
+    /**
+     * Changes made during the current step. See {@link Map#beginStep()}.
+     */
+    @NotNull
+    private final MapDelta delta;
+    @NotNull
+    private final List<MapDelta.Listener> deltaListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Number of steps which have begun and not ended yet.
+     */
+    private int stepDepth = 0;
+    /**
+     * Zobrist hash of the pipes and filled cells. See {@link Map#getHash()}.
+     */
+    private long hash;
     private boolean goldFingerActivated = false;
 
+    /**
+     * How the cells of a {@link Map} are stored.
+     */
+    public enum StorageMode {
+        /**
+         * Cells are stored as {@link Cell} objects.
+         */
+        OBJECT,
+        /**
+         * Cells are encoded into one byte each, and {@link Cell} objects are only created when requested. This is
+         * suitable for very large maps.
+         */
+        PACKED,
+        /**
+         * Cells are encoded as in {@link #PACKED}, but only the tiles of the map which differ from an empty map are
+         * allocated. This is suitable for very large maps where most cells are empty.
+         */
+        SPARSE
+    }
+
+    /**
+     * How the water flow of a {@link Map} is computed.
+     */
+    public enum FlowMode {
+        /**
+         * Only the cells filled in the previous round are expanded, one cell at a time.
+         */
+        FRONTIER,
+        /**
+         * Every round is computed with bitwise operations over 64 cells at a time. This is suitable for very large maps
+         * with long or branching pipelines.
+         */
+        BITBOARD
+    }
+
     /**
      * Creates a map with size of rows x cols.
      *
@@ -46,32 +132,101 @@ public class Map {
      * @param cols Number of columns.
      */
     public Map(int rows, int cols) {
-        cells = new Cell[rows][cols];
+        this(rows, cols, StorageMode.OBJECT);
+    }
 
-        for (int r = 0; r < rows; ++r) {
-            for (int c = 0; c < cols; ++c) {
-                var coord = new Coordinate(r, c);
+    /**
+     * Creates a map with size of rows x cols, using the given storage mode.
+     *
+     * @param rows Number of rows.
+     * @param cols Number of columns.
+     * @param mode How the cells of the map are stored.
+     */
+    public Map(int rows, int cols, @NotNull StorageMode mode) {
+        this(rows, cols, mode, FlowMode.FRONTIER);
+    }
 
-                if (r == 0 || c == 0) {
-                    cells[r][c] = new Wall(coord);
-                } else if (r == rows - 1 || c == cols - 1) {
-                    cells[r][c] = new Wall(coord);
-                } else {
-                    cells[r][c] = new FillableCell(coord);
+    /**
+     * Creates a map with size of rows x cols, using the given storage and flow modes.
+     *
+     * @param rows     Number of rows.
+     * @param cols     Number of columns.
+     * @param mode     How the cells of the map are stored.
+     * @param flowMode How the water flow of the map is computed.
+     */
+    public Map(int rows, int cols, @NotNull StorageMode mode, @NotNull FlowMode flowMode) {
+        this(rows, cols, mode, flowMode, new GenerationContext());
+    }
+
+    /**
+     * Creates a map with size of rows x cols, whose source and sink are placed with the given context.
+     *
+     * @param rows    Number of rows.
+     * @param cols    Number of columns.
+     * @param context Randomness of the source and sink placement.
+     */
+    public Map(int rows, int cols, @NotNull GenerationContext context) {
+        this(rows, cols, StorageMode.OBJECT, FlowMode.FRONTIER, context);
+    }
+
+    /**
+     * Creates a map with size of rows x cols, using the given storage and flow modes, whose source and sink are placed
+     * with the given context.
+     *
+     * @param rows     Number of rows.
+     * @param cols     Number of columns.
+     * @param mode     How the cells of the map are stored.
+     * @param flowMode How the water flow of the map is computed.
+     * @param context  Randomness of the source and sink placement.
+     * @throws IllegalArgumentException if the map has more than {@link Map#MAX_CELLS} cells.
+     */
+    public Map(int rows, int cols, @NotNull StorageMode mode, @NotNull FlowMode flowMode,
+               @NotNull GenerationContext context) {
+        checkSize(rows, cols);
+
+        if (mode == StorageMode.PACKED) {
+            storage = new PackedCellStorage(rows, cols);
+        } else if (mode == StorageMode.SPARSE) {
+            storage = new SparseCellStorage(rows, cols);
+        } else {
+            var cells = new Cell[rows][cols];
+
+            for (int r = 0; r < rows; ++r) {
+                for (int c = 0; c < cols; ++c) {
+                    var coord = new Coordinate(r, c);
+
+                    if (r == 0 || c == 0) {
+                        cells[r][c] = new Wall(coord);
+                    } else if (r == rows - 1 || c == cols - 1) {
+                        cells[r][c] = new Wall(coord);
+                    } else {
+                        cells[r][c] = new FillableCell(coord);
+                    }
                 }
             }
+
+            storage = new ObjectCellStorage(rows, cols, cells);
         }
 
         this.rows = rows;
         this.cols = cols;
 
-        TerminationCell.CreateInfo startCellInfo = generateStartCellInfo();
-        sourceCell = new TerminationCell(startCellInfo.coord, startCellInfo.dir, TerminationCell.Type.SOURCE);
-        cells[startCellInfo.coord.row][startCellInfo.coord.col] = sourceCell;
-
-        TerminationCell.CreateInfo sinkCellInfo = generateEndCellInfo();
-        sinkCell = new TerminationCell(sinkCellInfo.coord, sinkCellInfo.dir, TerminationCell.Type.SINK);
-        cells[sinkCellInfo.coord.row][sinkCellInfo.coord.col] = sinkCell;
+        TerminationCell.CreateInfo startCellInfo = generateStartCellInfo(context);
+        final var sourceCell = new TerminationCell(startCellInfo.coord, startCellInfo.dir, TerminationCell.Type.SOURCE);
+        storage.setCell(indexOf(startCellInfo.coord), sourceCell);
+
+        TerminationCell.CreateInfo sinkCellInfo = generateEndCellInfo(sourceCell, context);
+        final var sinkCell = new TerminationCell(sinkCellInfo.coord, sinkCellInfo.dir, TerminationCell.Type.SINK);
+        storage.setCell(indexOf(sinkCellInfo.coord), sinkCell);
+
+        sources = List.of(sourceCell);
+        sinks = List.of(sinkCell);
+        flow = createFlow(flowMode);
+        connectivity = new PipeConnectivity(storage, sources, sinks);
+        dirtyChunks = new CellBitSet(MapSnapshot.chunkCount(rows, cols));
+        snapshot = MapSnapshot.of(storage);
+        hash = computeHash();
+        delta = new MapDelta(cols);
     }
 
     /**
@@ -86,11 +241,42 @@ public class Map {
      * @param cells Cells to fill the map.
      */
     public Map(int rows, int cols, @NotNull Cell[][] cells) {
-        this.cells = cells;
+        this(rows, cols, cells, StorageMode.OBJECT);
+    }
+
+    /**
+     * Creates a map with the given cells, using the given storage mode.
+     *
+     * @param rows  Number of rows.
+     * @param cols  Number of columns.
+     * @param cells Cells to fill the map. Unless {@code mode} is {@link StorageMode#OBJECT}, the cells are copied into
+     *              the map and the array is not used afterwards.
+     * @param mode  How the cells of the map are stored.
+     */
+    public Map(int rows, int cols, @NotNull Cell[][] cells, @NotNull StorageMode mode) {
+        this(rows, cols, cells, mode, FlowMode.FRONTIER);
+    }
+
+    /**
+     * Creates a map with the given cells, using the given storage and flow modes.
+     *
+     * @param rows     Number of rows.
+     * @param cols     Number of columns.
+     * @param cells    Cells to fill the map. Unless {@code mode} is {@link StorageMode#OBJECT}, the cells are copied
+     *                 into the map and the array is not used afterwards.
+     * @param mode     How the cells of the map are stored.
+     * @param flowMode How the water flow of the map is computed.
+     * @throws IllegalArgumentException if the map has more than {@link Map#MAX_CELLS} cells, or does not have a source
+     *                                  and a sink.
+     */
+    public Map(int rows, int cols, @NotNull Cell[][] cells, @NotNull StorageMode mode, @NotNull FlowMode flowMode) {
+        checkSize(rows, cols);
 
         this.rows = rows;
         this.cols = cols;
 
+        final var sourceCells = new ArrayList<TerminationCell>();
+        final var sinkCells = new ArrayList<TerminationCell>();
         for (int r = 0; r < rows; ++r) {
             for (int c = 0; c < cols; ++c) {
                 var cell = cells[r][c];
@@ -98,25 +284,48 @@ public class Map {
                 if (cell instanceof TerminationCell) {
                     var tCell = (TerminationCell) cell;
                     if (tCell.type == TerminationCell.Type.SOURCE) {
-                        if (sourceCell != null) {
-                            throw new IllegalArgumentException();
-                        } else {
-                            sourceCell = tCell;
-                        }
+                        sourceCells.add(tCell);
                     } else if (tCell.type == TerminationCell.Type.SINK) {
-                        if (sinkCell != null) {
-                            throw new IllegalArgumentException();
-                        } else {
-                            sinkCell = tCell;
-                        }
+                        sinkCells.add(tCell);
                     }
                 }
             }
         }
 
-        if (sourceCell == null || sinkCell == null) {
-            throw new IllegalArgumentException();
+        if (sourceCells.isEmpty() || sinkCells.isEmpty()) {
+            throw new IllegalArgumentException("A map needs at least one source and one sink");
+        }
+        sources = List.copyOf(sourceCells);
+        sinks = List.copyOf(sinkCells);
+
+        if (mode == StorageMode.PACKED) {
+            storage = new PackedCellStorage(rows, cols, cells);
+        } else if (mode == StorageMode.SPARSE) {
+            storage = new SparseCellStorage(rows, cols, cells);
+        } else {
+            storage = new ObjectCellStorage(rows, cols, cells);
         }
+
+        flow = createFlow(flowMode);
+        connectivity = new PipeConnectivity(storage, sources, sinks);
+        dirtyChunks = new CellBitSet(MapSnapshot.chunkCount(rows, cols));
+        snapshot = MapSnapshot.of(storage);
+        hash = computeHash();
+        delta = new MapDelta(cols);
+    }
+
+    private static void checkSize(int rows, int cols) {
+        if ((long) rows * cols > MAX_CELLS) {
+            throw new IllegalArgumentException("A map cannot have more than " + MAX_CELLS + " cells");
+        }
+    }
+
+    @NotNull
+    private FlowEngine createFlow(@NotNull FlowMode flowMode) {
+        if (flowMode == FlowMode.BITBOARD) {
+            return new BitboardFlow(storage, sources, this::onCellFilled);
+        }
+        return new FlowFront(storage, sources, this::onCellFilled);
     }
 
     /**
@@ -166,6 +375,22 @@ public class Map {
      * @return {@code true} if the pipe is placed in the cell, {@code false} otherwise.
      */
     boolean tryPlacePipe(int row, int col, @NotNull Pipe p){
+        return tryPlacePipe(row, col, p.getShape());
+    }
+
+    /**
+     * Tries to place an unfilled pipe at (row, col).
+     *
+     * <p>
+     * The pipe is stored into the existing cell, so this does not allocate any objects.
+     * </p>
+     *
+     * @param row   One-Based row number to place pipe at.
+     * @param col   One-Based column number to place pipe at.
+     * @param shape Shape of the pipe to place in cell.
+     * @return {@code true} if the pipe is placed in the cell, {@code false} otherwise.
+     */
+    public boolean tryPlacePipe(int row, int col, @NotNull Pipe.Shape shape){
         if (row <= 0 || row >= rows) {
             return false;
         }
@@ -173,19 +398,27 @@ public class Map {
             return false;
         }
 
-        if (!(cells[row][col] instanceof FillableCell)) {
+        final int idx = row * cols + col;
+        if (storage.kind(idx) != CellStorage.KIND_FILLABLE) {
             return false;
         }
 
-        var cell = (FillableCell) (cells[row][col]);
-        if (cell.getPipe().isPresent()) {
+        if (storage.shape(idx) != null) {
             //the gold finger is activated
-            if(!cell.getPipe().get().getFilled()){
+            if(!storage.isFilled(idx)){
                 goldFingerActivated = true;
             }
             return false;
         }
-        cells[row][col] = new FillableCell(new Coordinate(row, col), p);
+        setPipe(idx, shape);
+        record(MapDelta.Type.PIPE_PLACED, idx, shape, -1);
+        flow.onPipePlaced(row, col);
+        connectivity.onPipePlaced(idx);
+        if (arrival != null) {
+            arrival.onPipePlaced(idx);
+        }
+        markDirty(idx);
+        publish();
         return true;
     }
 
@@ -196,12 +429,34 @@ public class Map {
      * @param p     the new pipe
      */
     public void forcePlacePipe(int row, int col, @NotNull Pipe p){
-        cells[row][col] = new FillableCell(new Coordinate(row, col), p);
+        forcePlacePipe(row, col, p.getShape());
+    }
+
+    /**
+     * directly replace a cell with an un-filled pipe of the given shape
+     * @param row   row of the pipe that will be replaced
+     * @param col   col of the pipe that will be replaced
+     * @param shape shape of the new pipe
+     */
+    public void forcePlacePipe(int row, int col, @NotNull Pipe.Shape shape){
+        final int idx = row * cols + col;
+        final Pipe.Shape previous = storage.shape(idx);
+        setPipe(idx, shape);
+        if (previous != null) {
+            record(MapDelta.Type.PIPE_REMOVED, idx, previous, -1);
+        }
+        record(MapDelta.Type.PIPE_PLACED, idx, shape, -1);
+        flow.onPipePlaced(row, col);
+        connectivity.onPipeChanged();
+        if (arrival != null) {
+            arrival.onPipeChanged();
+        }
+        markDirty(idx);
+        publish();
     }
 
     @NotNull
-    private TerminationCell.CreateInfo generateStartCellInfo() {
-        Random rng = new Random();
+    private TerminationCell.CreateInfo generateStartCellInfo(@NotNull GenerationContext rng) {
 
         Coordinate coord;
         Direction direction;
@@ -250,8 +505,8 @@ public class Map {
     }
 
     @NotNull
-    private TerminationCell.CreateInfo generateEndCellInfo() {
-        Random rng = new Random();
+    private TerminationCell.CreateInfo generateEndCellInfo(@NotNull TerminationCell sourceCell,
+                                                           @NotNull GenerationContext rng) {
 
         Coordinate coord;
         Direction direction;
@@ -317,7 +572,9 @@ public class Map {
                 System.out.print(StringUtils.createPadding(padLength, ' '));
             }
 
-            Arrays.stream(cells[i]).forEachOrdered(elem -> System.out.print(elem.toSingleChar()));
+            for (int j = 0; j < cols; ++j) {
+                System.out.print(CellCodec.charOf(storage.code(i * cols + j)));
+            }
 
             if (i != 0 && i != rows - 1) {
                 System.out.print(i);
@@ -335,9 +592,60 @@ public class Map {
      * @param canvas Canvas to render to.
      */
     public void render(@NotNull Canvas canvas) {
+        final MapSnapshot cells = snapshot;
         Platform.runLater(() -> Renderer.renderMap(canvas, cells));
     }
 
+    /**
+     * Returns the latest snapshot of the cells.
+     *
+     * <p>
+     * A new snapshot is published after every change to the map, and only the chunks of cells which have changed are
+     * copied. This method may be called from any thread. See {@link MapSnapshot} for details.
+     * </p>
+     *
+     * @return The latest snapshot of the cells.
+     */
+    @NotNull
+    public MapSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @param coord Coordinate of the cell.
+     * @return The cell at the coordinate. Depending on the {@link StorageMode} of this map, the cell may be created on
+     * demand, and changes to it are not reflected in the map.
+     */
+    @NotNull
+    public Cell getCell(@NotNull Coordinate coord) {
+        return storage.getCell(indexOf(coord));
+    }
+
+    /**
+     * @param coord Coordinate of the cell.
+     * @return Whether the pipe or termination cell at the coordinate is filled.
+     */
+    public boolean isFilled(@NotNull Coordinate coord) {
+        return isFilled(indexOf(coord));
+    }
+
+    /**
+     * @param idx Index of the cell, as returned by {@link Map#indexOf(int, int)}.
+     * @return Whether the pipe or termination cell at the index is filled.
+     */
+    public boolean isFilled(int idx) {
+        return storage.isFilled(idx);
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Index of the cell, which identifies the cell in index-based methods of this map.
+     */
+    public int indexOf(int row, int col) {
+        return row * cols + col;
+    }
+
     /**
      * Undoes a step from the map.
      *
@@ -349,159 +657,316 @@ public class Map {
      * @throws IllegalArgumentException if the cell is not an instance of {@link FillableCell}.
      */
     public void undo(@NotNull final Coordinate coord) {
-        if (!(cells[coord.row][coord.col] instanceof FillableCell)) {
+        undo(indexOf(coord));
+    }
+
+    /**
+     * Undoes a step from the map.
+     *
+     * @param idx Index of the cell to reset, as returned by {@link Map#indexOf(int, int)}.
+     * @throws IllegalArgumentException if the cell is not an instance of {@link FillableCell}.
+     * @see Map#undo(Coordinate)
+     */
+    public void undo(int idx) {
+        if (storage.kind(idx) != CellStorage.KIND_FILLABLE) {
             throw new IllegalArgumentException("Cannot undo on non-FillableCell types!");
         }
-        cells[coord.row][coord.col] = new FillableCell(coord);
+        final Pipe.Shape previous = storage.shape(idx);
+        setPipe(idx, null);
+        if (previous != null) {
+            record(MapDelta.Type.PIPE_REMOVED, idx, previous, -1);
+        }
+        flow.onPipeRemoved(idx / cols, idx % cols);
+        connectivity.onPipeChanged();
+        if (arrival != null) {
+            arrival.onPipeChanged();
+        }
+        markDirty(idx);
+        publish();
     }
 
+    /**
+     * Fills the source tiles.
+     */
     public void fillBeginTile() {
-        sourceCell.setFilled();
-    }
-
-    @NotNull
-    private List<Coordinate> getTraversedCoords() {
-        return new ArrayList<>(filledTiles);
+        for (var source : sources) {
+            final int idx = indexOf(source.coord);
+            if (!storage.isFilled(idx)) {
+                setFilled(idx);
+                record(MapDelta.Type.SOURCE_FILLED, idx, null, 0);
+            }
+            markDirty(idx);
+        }
+        publish();
     }
 
     /**
-     * Fills all pipes that are within {@code distance} units from the {@code sourceCell}.
+     * Fills all pipes that are within {@code distance} units from the sources.
      *
      * <p>
-     * Hint: There are two ways to approach this. You can either iteratively fill the tiles by distance (i.e. filling
-     * distance=0, distance=1, etc), or you can save the tiles you have already filled, and fill all adjacent cells of
-     * the already-filled tiles. Whichever method you choose is up to you, as long as the result is the same.
+     * The flows of all sources advance together, one round at a time. A source starts flowing in the first round in
+     * which the cell it points to has a pipe connected to it.
+     * </p>
+     * <p>
+     * How each round is computed depends on the {@link FlowMode} of this map. See {@link FlowFront} and
+     * {@link BitboardFlow} for details.
      * </p>
      *
      * @param distance Distance to fill pipes.
      */
     public void fillTiles(int distance) {
-        if (prevFilledDistance == null) {
-            prevFilledDistance = 0;
+        flow.fill(distance);
+        publish();
+    }
+
+    /**
+     * Fills the source and sink tiles, as well as any tiles which can be reached from the source tiles.
+     */
+    public void fillAll() {
+        // TODO
+        beginStep();
+        try {
+            fillBeginTile();
+            fillTiles(rows*cols);
+
+            for (var sink : sinks) {
+                final int idx = indexOf(sink.coord);
+                if (!storage.isFilled(idx)) {
+                    setFilled(idx);
+                    record(MapDelta.Type.SINK_FILLED, idx, null, -1);
+                }
+                markDirty(idx);
+            }
+        } finally {
+            endStep();
         }
+    }
 
-        while (prevFilledDistance != distance) {
-            var currentDistance = prevFilledDistance + 1;
-            prevFilledTiles = 0;
+    /**
+     * Checks whether there exists a path from a source to every sink.
+     *
+     * <p>
+     * A path only passes between two cells if both of them have an opening towards each other, which is the same rule
+     * the water follows. Connectivity is updated as pipes are placed, so this is answered without searching the map.
+     * See {@link PipeConnectivity} for details.
+     * </p>
+     *
+     * @return {@code true} if every sink is connected to a source, else {@code false}.
+     */
+    public boolean checkPath() {
+        return connectivity.areSinksConnected();
+    }
 
-            if (currentDistance == 0) {
-                filledTiles.add(sourceCell.coord);
-                prevFilledTiles = 1;
-            } else if (currentDistance == 1) {
-                var coord = sourceCell.coord;
-                var newCoord = coord.add(sourceCell.pointingTo.getOffset());
+    /**
+     * Computes the round in which the water reaches a cell, assuming no further pipes are placed.
+     *
+     * <p>
+     * Arrival rounds are updated as pipes are placed, so this is answered without simulating the flow. See
+     * {@link FlowArrival} for details.
+     * </p>
+     *
+     * @param coord Coordinate of the cell.
+     * @return {@code 0} for the source cell, the round in which the cell is or will be filled for other cells, or
+     * {@code -1} if the water cannot reach the cell.
+     */
+    public int arrivalRound(@NotNull Coordinate coord) {
+        final int round = getArrival().arrivalOf(indexOf(coord));
+        return round != FlowArrival.UNREACHED ? round : -1;
+    }
 
-                if (!(cells[newCoord.row][newCoord.col] instanceof FillableCell)) {
-                    return;
-                }
-                var cell = (FillableCell) cells[newCoord.row][newCoord.col];
-                if (cell.getPipe().isEmpty()) {
-                    return;
-                }
-                if (Arrays.stream(cell.getPipe().get().getConnections()).noneMatch(it -> sourceCell.pointingTo == it.getOpposite())) {
-                    return;
-                }
+    /**
+     * @return Number of rounds from now until a round ends without filling any pipes, assuming no further pipes are
+     * placed. A value of {@code 1} means that the game is lost after the next round.
+     */
+    public int roundsUntilSpill() {
+        return getArrival().roundsUntilSpill();
+    }
 
-                cell.getPipe().get().setFilled();
-                filledTiles.add(newCoord);
-                prevFilledTiles = 1;
-            } else {
-                final var traversedTiles = getTraversedCoords();
+    /**
+     * @return Number of rounds from now until the water reaches every sink, assuming no further pipes are placed, or
+     * {@code -1} if the water cannot reach some sink.
+     */
+    public int roundsUntilSinkReached() {
+        return getArrival().roundsUntilSinkReached();
+    }
 
-                for (Coordinate c : traversedTiles) {
-                    if (!(cells[c.row][c.col] instanceof FillableCell)) {
-                        continue;
-                    }
+    @NotNull
+    private FlowArrival getArrival() {
+        if (arrival == null) {
+            arrival = new FlowArrival(storage, flow, sources, sinks);
+        }
+        return arrival;
+    }
 
-                    var tile = (FillableCell) cells[c.row][c.col];
-                    if (tile.getPipe().isEmpty()) {
-                        throw new IllegalStateException();
-                    }
+    /**
+     * Returns the Zobrist hash of the map.
+     *
+     * <p>
+     * The hash covers the pipe in every cell and whether every cell is filled, and is updated as pipes are placed,
+     * removed and filled, so this does not scan the map. Two maps with the same size, walls and termination cells which
+     * are in the same state have the same hash.
+     * </p>
+     *
+     * @return Zobrist hash of the map.
+     */
+    public long getHash() {
+        return hash;
+    }
 
-                    for (Direction d : tile.getPipe().get().getConnections()) {
-                        var newCoord = c.add(d.getOffset());
-
-                        if (!(cells[newCoord.row][newCoord.col] instanceof FillableCell)) {
-                            continue;
-                        }
-                        if (traversedTiles.stream().anyMatch(it -> it.equals(newCoord))) {
-                            continue;
-                        }
-                        var cell = (FillableCell) cells[newCoord.row][newCoord.col];
-                        if (cell.getPipe().isEmpty()) {
-                            continue;
-                        }
-                        if (Arrays.stream(cell.getPipe().get().getConnections()).noneMatch(it -> d == it.getOpposite())) {
-                            continue;
-                        }
-
-                        cell.getPipe().get().setFilled();
-                        filledTiles.add(newCoord);
-                    }
-                }
+    /**
+     * Computes the Zobrist hash of the map. Walls and empty fillable cells have no keys, so only the cells which the
+     * storage does not know to hold the default map are visited.
+     *
+     * @return Zobrist hash of the map.
+     */
+    private long computeHash() {
+        final long[] h = {0};
+        storage.forEachTouchedCell(idx -> h[0] ^= cellKey(idx));
+        return h[0];
+    }
 
-                prevFilledTiles = filledTiles.size() - traversedTiles.size();
-            }
+    /**
+     * @param idx Index of the cell.
+     * @return XOR of the Zobrist keys of the current state of the cell.
+     */
+    private long cellKey(int idx) {
+        long key = 0;
+        final Pipe.Shape shape = storage.shape(idx);
+        if (shape != null) {
+            key ^= Zobrist.key(HASH_TABLE_SHAPE, idx, shape.ordinal());
+        }
+        if (storage.isFilled(idx)) {
+            key ^= Zobrist.key(HASH_TABLE_FILLED, idx, 0);
+        }
+        return key;
+    }
+
+    private void setPipe(int idx, @Nullable Pipe.Shape shape) {
+        hash ^= cellKey(idx);
+        storage.setPipe(idx, shape);
+        hash ^= cellKey(idx);
+    }
+
+    private void setFilled(int idx) {
+        hash ^= cellKey(idx);
+        storage.setFilled(idx);
+        hash ^= cellKey(idx);
+    }
 
-            prevFilledDistance = currentDistance;
+    private void onCellFilled(int idx, int round) {
+        if (!storage.isFilled(idx)) {
+            hash ^= Zobrist.key(HASH_TABLE_FILLED, idx, 0);
+            record(MapDelta.Type.CELL_FILLED, idx, null, round);
+        }
+        markDirty(idx);
+        if (arrival != null) {
+            arrival.onFilled(idx, round);
         }
     }
 
+    private void markDirty(int idx) {
+        dirtyChunks.set(MapSnapshot.chunkOf(idx / cols, idx % cols, cols));
+    }
+
+    /**
+     * Adds a listener which receives the changes made to this map, once at the end of every step.
+     *
+     * <p>
+     * Listeners are called on the thread which changes the map. See {@link MapDelta} for details.
+     * </p>
+     *
+     * @param listener Listener to add.
+     */
+    public void addDeltaListener(@NotNull MapDelta.Listener listener) {
+        deltaListeners.add(listener);
+    }
+
     /**
-     * Fills the source and sink tiles, as well as any tiles which can be reached from the source tile.
+     * @param listener Listener to remove.
      */
-    public void fillAll() {
-        // TODO
-        fillBeginTile();
-        fillTiles(rows*cols);
-        sinkCell.setFilled();
+    public void removeDeltaListener(@NotNull MapDelta.Listener listener) {
+        deltaListeners.remove(listener);
     }
 
     /**
-     * Checks whether there exists a path from {@code sourceCell} to {@code sinkCell}.
+     * Begins a step, which groups the following changes to the map until the matching {@link Map#endStep()}.
      *
      * <p>
-     * Hint: This problem is similar to finding a specific node in a graph. As stated in the README, one of the ways you
-     * could approach this is to use Breadth-First Search.
+     * Every public method which changes the map is a step of its own. Within a step, the snapshot is not published and
+     * the changes are not delivered to the delta listeners until the step ends. Steps may be nested, in which case
+     * only the end of the outermost step publishes the changes.
      * </p>
+     */
+    public void beginStep() {
+        ++stepDepth;
+    }
+
+    /**
+     * Ends a step begun by {@link Map#beginStep()}.
      *
-     * @return {@code true} if a path exists, else {@code false}.
+     * @throws IllegalStateException if no step has begun.
      */
-    public boolean checkPath() {
-        // BFS woohoo!
-        var coordsTraversed = new ArrayList<Coordinate>();
+    public void endStep() {
+        if (stepDepth == 0) {
+            throw new IllegalStateException("No step has begun");
+        }
+        --stepDepth;
+        publish();
+    }
 
-        Queue<Coordinate> coordsToCheck = new LinkedList<>();
-        coordsToCheck.add(sourceCell.coord);
+    private void record(@NotNull MapDelta.Type type, int idx, @Nullable Pipe.Shape shape, int round) {
+        if (!deltaListeners.isEmpty()) {
+            delta.add(type, idx, shape, round);
+        }
+    }
 
-        while (!coordsToCheck.isEmpty()) {
-            var thisCoord = coordsToCheck.remove();
-            if (coordsTraversed.stream().anyMatch(it -> it.equals(thisCoord))) {
-                continue;
-            }
+    /**
+     * Publishes a new snapshot if any cell has changed since the last snapshot, and delivers the changes to the delta
+     * listeners. Does nothing within a step.
+     */
+    private void publish() {
+        if (stepDepth != 0) {
+            return;
+        }
 
-            var thisCell = cells[thisCoord.row][thisCoord.col];
-            if (thisCell instanceof TerminationCell) {
-                var thisTermCell = (TerminationCell) thisCell;
-                if (thisTermCell.type == TerminationCell.Type.SINK) {
-                    return true;
-                } else {
-                    coordsToCheck.add(thisTermCell.coord.add(thisTermCell.pointingTo.getOffset()));
+        if (dirtyChunks.cardinality() != 0) {
+            snapshot = snapshot.update(storage, dirtyChunks);
+            dirtyChunks.clear();
+        }
+
+        if (delta.size() != 0) {
+            try {
+                for (var listener : deltaListeners) {
+                    listener.onDelta(delta);
                 }
+            } finally {
+                delta.clear();
             }
+        }
+    }
 
-            if (thisCell instanceof FillableCell) {
-                ((FillableCell) thisCell).getPipe().ifPresent(pipe -> {
-                    for (Direction dir : pipe.getConnections()) {
-                        coordsToCheck.add(thisCoord.add(dir.getOffset()));
-                    }
-                });
-            }
+    /**
+     * @param coord Coordinate of a cell.
+     * @return Index of the cell in {@link Map#storage}.
+     */
+    private int indexOf(@NotNull Coordinate coord) {
+        return coord.row * cols + coord.col;
+    }
 
-            coordsTraversed.add(thisCoord);
-        }
+    /**
+     * @return Source cells of the map.
+     */
+    @NotNull
+    public List<TerminationCell> getSources() {
+        return sources;
+    }
 
-        return false;
+    /**
+     * @return Sink cells of the map.
+     */
+    @NotNull
+    public List<TerminationCell> getSinks() {
+        return sinks;
     }
 
     /**
@@ -513,7 +978,7 @@ public class Map {
      * @return {@code true} if the game is lost.
      */
     public boolean hasLost() {
-        return prevFilledTiles == 0;
+        return flow.getLastRoundFilled() == 0;
     }
 
     public boolean isGoldFingerActivated() {
@@ -0,0 +1,185 @@
+package models.map;
+
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Changes made to a {@link Map} during one step, in the order they were made.
+ *
+ * <p>
+ * Events are stored in parallel arrays which are reused for every step, so recording and delivering events does not
+ * allocate any objects once the arrays are large enough. A delta is only valid while it is being delivered to a
+ * {@link Listener}; it is cleared afterwards, so listeners must copy anything they want to keep.
+ * </p>
+ */
+public final class MapDelta {
+
+    /**
+     * Type of a change.
+     */
+    public enum Type {
+        /**
+         * A pipe is placed into an empty cell, or replaces another pipe.
+         */
+        PIPE_PLACED,
+        /**
+         * A pipe is removed from a cell, or is replaced by another pipe.
+         */
+        PIPE_REMOVED,
+        /**
+         * A pipe is filled by the water.
+         */
+        CELL_FILLED,
+        /**
+         * The source cell is filled.
+         */
+        SOURCE_FILLED,
+        /**
+         * The sink cell is filled.
+         */
+        SINK_FILLED
+    }
+
+    /**
+     * Receives the changes made to a {@link Map}.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called once at the end of every step which changed the map.
+         *
+         * @param delta Changes made during the step. Only valid until this method returns.
+         */
+        void onDelta(@NotNull MapDelta delta);
+    }
+
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    private final int cols;
+    @NotNull
+    private Type[] types = new Type[16];
+    @NotNull
+    private int[] cells = new int[16];
+    /**
+     * Ordinal of the shape of each event, or {@code -1} for events without a shape.
+     */
+    @NotNull
+    private byte[] shapes = new byte[16];
+    /**
+     * Round of each {@link Type#CELL_FILLED} event, or {@code -1} for other events.
+     */
+    @NotNull
+    private int[] rounds = new int[16];
+    private int size = 0;
+
+    /**
+     * @param cols Number of columns of the map.
+     */
+    MapDelta(int cols) {
+        this.cols = cols;
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param type  Type of the event.
+     * @param idx   Index of the cell.
+     * @param shape Shape of the pipe which is placed or removed, or {@code null} for other events.
+     * @param round Round in which the cell is filled, or {@code -1} for other events.
+     */
+    void add(@NotNull Type type, int idx, @Nullable Pipe.Shape shape, int round) {
+        if (size == types.length) {
+            final int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            cells = Arrays.copyOf(cells, capacity);
+            shapes = Arrays.copyOf(shapes, capacity);
+            rounds = Arrays.copyOf(rounds, capacity);
+        }
+
+        types[size] = type;
+        cells[size] = idx;
+        shapes[size] = (byte) (shape != null ? shape.ordinal() : -1);
+        rounds[size] = round;
+        ++size;
+    }
+
+    /**
+     * Removes all events.
+     */
+    void clear() {
+        Arrays.fill(types, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return Number of events.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i Index of the event.
+     * @return Type of the event.
+     */
+    @NotNull
+    public Type getType(int i) {
+        checkIndex(i);
+        return types[i];
+    }
+
+    /**
+     * @param i Index of the event.
+     * @return Index of the cell changed by the event, as returned by {@link Map#indexOf(int, int)}.
+     */
+    public int getCellIndex(int i) {
+        checkIndex(i);
+        return cells[i];
+    }
+
+    /**
+     * @param i Index of the event.
+     * @return Row of the cell changed by the event.
+     */
+    public int getRow(int i) {
+        return getCellIndex(i) / cols;
+    }
+
+    /**
+     * @param i Index of the event.
+     * @return Column of the cell changed by the event.
+     */
+    public int getCol(int i) {
+        return getCellIndex(i) % cols;
+    }
+
+    /**
+     * @param i Index of the event.
+     * @return Shape of the pipe placed or removed by the event, or {@code null} for other events.
+     */
+    @Nullable
+    public Pipe.Shape getShape(int i) {
+        checkIndex(i);
+        return shapes[i] >= 0 ? SHAPES[shapes[i]] : null;
+    }
+
+    /**
+     * @param i Index of the event.
+     * @return Round in which the cell is filled for {@link Type#CELL_FILLED} events, {@code 0} for
+     * {@link Type#SOURCE_FILLED} events, or {@code -1} for other events.
+     */
+    public int getRound(int i) {
+        checkIndex(i);
+        return rounds[i];
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Event " + i + " is outside the delta of size " + size);
+        }
+    }
+}
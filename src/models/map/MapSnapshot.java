@@ -0,0 +1,265 @@
+package models.map;
+
+import controllers.Renderer;
+import models.map.cells.Cell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+
+import java.util.Arrays;
+
+/**
+ * Immutable view of the cells of a {@link Map} at one point in time.
+ *
+ * <p>
+ * The cells are stored in chunks of {@link MapSnapshot#CHUNK_ROWS} x {@link MapSnapshot#CHUNK_COLS} cells, each encoded
+ * as in {@link CellCodec}, and the chunks of each band of {@link MapSnapshot#CHUNK_ROWS} rows are held in one array. A
+ * new snapshot only copies the chunks which have changed since the previous snapshot, together with the arrays of their
+ * bands, and shares all other chunks with it. Since a snapshot is never modified after it is created, it can be read
+ * from any thread without locking.
+ * </p>
+ * <p>
+ * Consecutive chunks or bands with the same content, such as the untouched cells of a large empty map, share one
+ * array. Chunks also share the array of the chunk above them if they have the same content.
+ * </p>
+ */
+public final class MapSnapshot {
+
+    /**
+     * Number of rows in each chunk.
+     */
+    static final int CHUNK_ROWS = 8;
+    /**
+     * Number of columns in each chunk.
+     */
+    static final int CHUNK_COLS = 64;
+    /**
+     * Chunk of empty fillable cells, shared by the untouched chunks inside the border of every snapshot.
+     */
+    private static final byte[] EMPTY_CHUNK = new byte[CHUNK_ROWS * CHUNK_COLS];
+
+    static {
+        Arrays.fill(EMPTY_CHUNK, (byte) CellStorage.KIND_FILLABLE);
+    }
+
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final byte[][][] bands;
+
+    private MapSnapshot(int rows, int cols, @NotNull byte[][][] bands) {
+        this.rows = rows;
+        this.cols = cols;
+        this.bands = bands;
+    }
+
+    /**
+     * Creates a snapshot of the storage.
+     *
+     * <p>
+     * Chunks inside the border which the storage knows to be untouched share {@link MapSnapshot#EMPTY_CHUNK} without
+     * reading their cells, so a sparse map only pays for the chunks around its border and its changed tiles.
+     * </p>
+     *
+     * @param storage Cells to copy.
+     * @return A snapshot of every chunk of the storage.
+     */
+    @NotNull
+    static MapSnapshot of(@NotNull CellStorage storage) {
+        final int rows = storage.rows();
+        final int cols = storage.cols();
+        final int bandCount = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        final int chunksPerBand = chunksPerBand(cols);
+        final var bands = new byte[bandCount][][];
+
+        byte[] previous = null;
+        byte[] buffer = null;
+        for (int b = 0; b < bandCount; ++b) {
+            final int firstRow = b * CHUNK_ROWS;
+            final boolean innerBand = firstRow > 0 && firstRow + CHUNK_ROWS < rows;
+            final var band = new byte[chunksPerBand][];
+            for (int c = 0; c < chunksPerBand; ++c) {
+                final int firstCol = c * CHUNK_COLS;
+                if (innerBand && firstCol > 0 && firstCol + CHUNK_COLS < cols
+                        && storage.isUntouched(firstRow, firstCol, CHUNK_ROWS, CHUNK_COLS)) {
+                    band[c] = EMPTY_CHUNK;
+                    continue;
+                }
+
+                if (buffer == null) {
+                    buffer = new byte[CHUNK_ROWS * CHUNK_COLS];
+                }
+                readChunk(storage, b, c, buffer);
+
+                final byte[] above = b > 0 ? bands[b - 1][c] : null;
+                if (previous != null && Arrays.equals(previous, buffer)) {
+                    band[c] = previous;
+                } else if (above != null && Arrays.equals(above, buffer)) {
+                    band[c] = above;
+                } else {
+                    band[c] = buffer;
+                    previous = buffer;
+                    buffer = null;
+                }
+            }
+
+            bands[b] = b > 0 && Arrays.equals(bands[b - 1], band) ? bands[b - 1] : band;
+        }
+        return new MapSnapshot(rows, cols, bands);
+    }
+
+    /**
+     * Creates a snapshot which shares the unchanged chunks with this snapshot.
+     *
+     * @param storage Cells to copy the changed chunks from.
+     * @param dirty   Indices of the chunks which have changed since this snapshot, as in
+     *                {@link MapSnapshot#chunkOf(int, int, int)}.
+     * @return A snapshot of the storage.
+     */
+    @NotNull
+    MapSnapshot update(@NotNull CellStorage storage, @NotNull CellBitSet dirty) {
+        final int chunksPerBand = chunksPerBand(cols);
+        final byte[][][] next = bands.clone();
+        for (int i = dirty.nextSetBit(0); i != -1; i = dirty.nextSetBit(i + 1)) {
+            final int b = i / chunksPerBand;
+            final int c = i % chunksPerBand;
+            if (next[b] == bands[b]) {
+                next[b] = bands[b].clone();
+            }
+
+            final var codes = new byte[CHUNK_ROWS * CHUNK_COLS];
+            readChunk(storage, b, c, codes);
+            next[b][c] = codes;
+        }
+        return new MapSnapshot(rows, cols, next);
+    }
+
+    /**
+     * @param rows Number of rows.
+     * @param cols Number of columns.
+     * @return Number of chunks needed to hold the cells.
+     */
+    static int chunkCount(int rows, int cols) {
+        return (rows + CHUNK_ROWS - 1) / CHUNK_ROWS * chunksPerBand(cols);
+    }
+
+    /**
+     * @param row  Row of the cell.
+     * @param col  Column of the cell.
+     * @param cols Number of columns.
+     * @return Index of the chunk holding the cell.
+     */
+    static int chunkOf(int row, int col, int cols) {
+        return row / CHUNK_ROWS * chunksPerBand(cols) + col / CHUNK_COLS;
+    }
+
+    private static int chunksPerBand(int cols) {
+        return (cols + CHUNK_COLS - 1) / CHUNK_COLS;
+    }
+
+    /**
+     * Reads a chunk from the storage. Positions of the chunk which are outside the storage are left unchanged.
+     *
+     * @param storage Cells to read from.
+     * @param band    Index of the band.
+     * @param chunk   Index of the chunk within the band.
+     * @param codes   Array to read into.
+     */
+    private static void readChunk(@NotNull CellStorage storage, int band, int chunk, @NotNull byte[] codes) {
+        final int cols = storage.cols();
+        final int firstRow = band * CHUNK_ROWS;
+        final int firstCol = chunk * CHUNK_COLS;
+        final int chunkRows = Math.min(CHUNK_ROWS, storage.rows() - firstRow);
+        final int chunkCols = Math.min(CHUNK_COLS, cols - firstCol);
+
+        for (int r = 0; r < chunkRows; ++r) {
+            final int base = (firstRow + r) * cols + firstCol;
+            for (int c = 0; c < chunkCols; ++c) {
+                codes[r * CHUNK_COLS + c] = storage.code(base + c);
+            }
+        }
+    }
+
+    private int codeAt(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("(" + row + ", " + col + ") is outside the map");
+        }
+        return bands[row / CHUNK_ROWS][col / CHUNK_COLS][(row % CHUNK_ROWS) * CHUNK_COLS + col % CHUNK_COLS];
+    }
+
+    /**
+     * @return Number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @param coord Coordinate of the cell.
+     * @return A new {@link Cell} representing the cell at the coordinate.
+     */
+    @NotNull
+    public Cell getCell(@NotNull Coordinate coord) {
+        return CellCodec.decode(codeAt(coord.row, coord.col), coord);
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Shape of the pipe in the cell, or {@code null} if the cell does not contain a pipe.
+     */
+    @Nullable
+    public Pipe.Shape getShape(int row, int col) {
+        return CellCodec.shape(codeAt(row, col));
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Whether the pipe or termination cell is filled.
+     */
+    public boolean isFilled(int row, int col) {
+        return CellCodec.isFilled(codeAt(row, col));
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Image of the pipe in the cell if it has one, otherwise the image of the cell. No cell is created.
+     */
+    @NotNull
+    public Renderer.CellImage getImage(int row, int col) {
+        return CellCodec.imageOf(codeAt(row, col));
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return The character representation of the cell. No cell is created.
+     */
+    public char getChar(int row, int col) {
+        return CellCodec.charOf(codeAt(row, col));
+    }
+
+    /**
+     * @return A new 2D cell array representing this snapshot.
+     */
+    @NotNull
+    public Cell[][] toCells() {
+        final var cells = new Cell[rows][cols];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                cells[r][c] = CellCodec.decode(codeAt(r, c), new Coordinate(r, c));
+            }
+        }
+        return cells;
+    }
+}
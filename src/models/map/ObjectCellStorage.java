@@ -0,0 +1,105 @@
+package models.map;
+
+import models.map.cells.Cell;
+import models.map.cells.FillableCell;
+import models.map.cells.TerminationCell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * {@link CellStorage} backed by a 2D array of {@link Cell} objects.
+ */
+class ObjectCellStorage implements CellStorage {
+
+    @NotNull
+    private final Cell[][] cells;
+    private final int rows;
+    private final int cols;
+
+    /**
+     * @param rows  Number of rows.
+     * @param cols  Number of columns.
+     * @param cells Cells to back this storage. The array is used directly, without copying.
+     */
+    ObjectCellStorage(int rows, int cols, @NotNull Cell[][] cells) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = cells;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public int kind(int idx) {
+        final Cell cell = cells[idx / cols][idx % cols];
+        if (cell instanceof FillableCell) {
+            return KIND_FILLABLE;
+        }
+        if (cell instanceof TerminationCell) {
+            return ((TerminationCell) cell).type == TerminationCell.Type.SOURCE ? KIND_SOURCE : KIND_SINK;
+        }
+        return KIND_WALL;
+    }
+
+    @Nullable
+    @Override
+    public Pipe.Shape shape(int idx) {
+        final Cell cell = cells[idx / cols][idx % cols];
+        return cell instanceof FillableCell ? ((FillableCell) cell).getShape() : null;
+    }
+
+    @Override
+    public boolean isFilled(int idx) {
+        final Cell cell = cells[idx / cols][idx % cols];
+        if (cell instanceof TerminationCell) {
+            return ((TerminationCell) cell).isFilled();
+        }
+        return cell instanceof FillableCell && ((FillableCell) cell).isFilled();
+    }
+
+    @Override
+    public void setFilled(int idx) {
+        final Cell cell = cells[idx / cols][idx % cols];
+        if (cell instanceof TerminationCell) {
+            ((TerminationCell) cell).setFilled();
+        } else if (cell instanceof FillableCell) {
+            ((FillableCell) cell).setFilled();
+        }
+    }
+
+    @Override
+    public void setPipe(int idx, @Nullable Pipe.Shape shape) {
+        ((FillableCell) cells[idx / cols][idx % cols]).setPipe(shape);
+    }
+
+    @Override
+    public void setCell(int idx, @NotNull Cell cell) {
+        cells[idx / cols][idx % cols] = cell;
+    }
+
+    @NotNull
+    @Override
+    public Cell getCell(int idx) {
+        return cells[idx / cols][idx % cols];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return The backing array of this storage.
+     */
+    @NotNull
+    @Override
+    public Cell[][] toCells() {
+        return cells;
+    }
+}
@@ -0,0 +1,117 @@
+package models.map;
+
+import models.map.cells.Cell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+
+/**
+ * {@link CellStorage} which encodes every cell into a single byte, using the layout of {@link CellCodec}.
+ *
+ * <p>
+ * {@link Cell} objects are only created when requested through {@link PackedCellStorage#getCell(int)}.
+ * </p>
+ */
+class PackedCellStorage implements CellStorage {
+
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final byte[] codes;
+
+    /**
+     * Creates a storage with walls around the border, and empty fillable cells everywhere else.
+     *
+     * @param rows Number of rows.
+     * @param cols Number of columns.
+     */
+    PackedCellStorage(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.codes = new byte[rows * cols];
+
+        for (int r = 1; r < rows - 1; ++r) {
+            for (int c = 1; c < cols - 1; ++c) {
+                codes[r * cols + c] = KIND_FILLABLE;
+            }
+        }
+    }
+
+    /**
+     * Creates a storage from the given cells.
+     *
+     * @param rows  Number of rows.
+     * @param cols  Number of columns.
+     * @param cells Cells to encode.
+     */
+    PackedCellStorage(int rows, int cols, @NotNull Cell[][] cells) {
+        this.rows = rows;
+        this.cols = cols;
+        this.codes = new byte[rows * cols];
+
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                setCell(r * cols + c, cells[r][c]);
+            }
+        }
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public int kind(int idx) {
+        return CellCodec.kind(codes[idx]);
+    }
+
+    @Nullable
+    @Override
+    public Pipe.Shape shape(int idx) {
+        return CellCodec.shape(codes[idx]);
+    }
+
+    @Override
+    public int connections(int idx) {
+        final Pipe.Shape shape = CellCodec.shape(codes[idx]);
+        return shape != null ? shape.mask() : 0;
+    }
+
+    @Override
+    public boolean isFilled(int idx) {
+        return CellCodec.isFilled(codes[idx]);
+    }
+
+    @Override
+    public void setFilled(int idx) {
+        codes[idx] = CellCodec.fill(codes[idx]);
+    }
+
+    @Override
+    public void setPipe(int idx, @Nullable Pipe.Shape shape) {
+        codes[idx] = CellCodec.encodeShape(shape);
+    }
+
+    @Override
+    public void setCell(int idx, @NotNull Cell cell) {
+        codes[idx] = CellCodec.encode(cell);
+    }
+
+    @NotNull
+    @Override
+    public Cell getCell(int idx) {
+        return CellCodec.decode(codes[idx], new Coordinate(idx / cols, idx % cols));
+    }
+
+    @Override
+    public byte code(int idx) {
+        return codes[idx];
+    }
+}
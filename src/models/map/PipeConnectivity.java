@@ -0,0 +1,241 @@
+package models.map;
+
+import models.map.cells.TerminationCell;
+import org.jetbrains.annotations.NotNull;
+import util.Direction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tracks which cells of a {@link Map} are connected by pipes, using a union-find structure.
+ *
+ * <p>
+ * Two neighbouring cells are connected if both of them have an opening towards each other. A source cell is
+ * connected to the pipe it points to, and a sink cell is connected to the pipe which points into it, under the same
+ * rule. This is the same rule which the water follows when filling pipes.
+ * </p>
+ * <p>
+ * Placing a pipe only merges the components of its neighbours. Since a union-find structure cannot split components,
+ * removing or replacing a pipe marks the structure as stale, and it is rebuilt from the storage on the next query.
+ * </p>
+ * <p>
+ * The structure is stored in pages of {@link PipeConnectivity#PAGE_SIZE} cells, which are only allocated once one of
+ * their cells is merged with another cell. Cells in unallocated pages are their own component, so large maps with few
+ * pipes only pay for the pages around their pipes.
+ * </p>
+ */
+class PipeConnectivity {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static final int PAGE_SHIFT = 12;
+    /**
+     * Number of cells in each page.
+     */
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final CellStorage storage;
+    /**
+     * Indices of the source cells.
+     */
+    @NotNull
+    private final int[] sources;
+    /**
+     * Indices of the sink cells.
+     */
+    @NotNull
+    private final int[] sinks;
+
+    /**
+     * Parent of each cell, or {@code null} for pages where every cell is its own parent.
+     */
+    @NotNull
+    private final int[][] parent;
+    /**
+     * Rank of each root, or {@code null} for pages where every rank is {@code 0}.
+     */
+    @NotNull
+    private final byte[][] rank;
+    private boolean stale = true;
+
+    /**
+     * @param storage Cells of the map.
+     * @param sources Source cells of the map.
+     * @param sinks   Sink cells of the map.
+     */
+    PipeConnectivity(@NotNull CellStorage storage, @NotNull List<TerminationCell> sources,
+                     @NotNull List<TerminationCell> sinks) {
+        this.rows = storage.rows();
+        this.cols = storage.cols();
+        this.storage = storage;
+        this.sources = sources.stream().mapToInt(this::indexOf).toArray();
+        this.sinks = sinks.stream().mapToInt(this::indexOf).toArray();
+
+        final int pages = (int) (((long) rows * cols + PAGE_MASK) >>> PAGE_SHIFT);
+        parent = new int[pages][];
+        rank = new byte[pages][];
+    }
+
+    /**
+     * Notifies that a pipe has been placed in a previously empty cell.
+     *
+     * @param idx Index of the cell.
+     */
+    void onPipePlaced(int idx) {
+        if (!stale) {
+            link(idx);
+        }
+    }
+
+    /**
+     * Notifies that a pipe has been removed or replaced.
+     */
+    void onPipeChanged() {
+        stale = true;
+    }
+
+    /**
+     * @return Whether every sink is connected to a source.
+     */
+    boolean areSinksConnected() {
+        if (stale) {
+            rebuild();
+        }
+
+        for (int sink : sinks) {
+            final int root = find(sink);
+            boolean connected = false;
+            for (int source : sources) {
+                if (find(source) == root) {
+                    connected = true;
+                    break;
+                }
+            }
+            if (!connected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recomputes all components from the storage, visiting only the cells which may differ from the default map.
+     */
+    private void rebuild() {
+        Arrays.fill(parent, null);
+        Arrays.fill(rank, null);
+
+        // only pipes are linked, and they link the sources and sinks next to them; cells which the storage knows to
+        // be untouched hold no pipes
+        storage.forEachTouchedCell(idx -> {
+            if (storage.connections(idx) != 0) {
+                link(idx);
+            }
+        });
+
+        stale = false;
+    }
+
+    /**
+     * Merges the cell with every neighbour it is connected to.
+     *
+     * @param idx Index of a cell containing a pipe.
+     */
+    private void link(int idx) {
+        final int mask = storage.connections(idx);
+        final int row = idx / cols;
+        final int col = idx % cols;
+
+        for (Direction d : DIRECTIONS) {
+            if ((mask & d.mask()) == 0) {
+                continue;
+            }
+
+            final int r = row + d.getRowOffset();
+            final int c = col + d.getColOffset();
+            if (r < 0 || r >= rows || c < 0 || c >= cols) {
+                continue;
+            }
+
+            final int n = r * cols + c;
+            final int kind = storage.kind(n);
+            if ((storage.connections(n) & d.getOpposite().mask()) != 0
+                    || (kind == CellStorage.KIND_SOURCE && storage.pointingTo(n) == d.getOpposite())
+                    || (kind == CellStorage.KIND_SINK && storage.pointingTo(n) == d)) {
+                union(idx, n);
+            }
+        }
+    }
+
+    private int find(int idx) {
+        int p = parentOf(idx);
+        while (p != idx) {
+            final int grandparent = parentOf(p);
+            parent[idx >>> PAGE_SHIFT][idx & PAGE_MASK] = grandparent;
+            idx = grandparent;
+            p = parentOf(idx);
+        }
+        return idx;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return;
+        }
+
+        final int rankA = rankOf(a);
+        final int rankB = rankOf(b);
+        if (rankA < rankB) {
+            setParent(a, b);
+        } else if (rankA > rankB) {
+            setParent(b, a);
+        } else {
+            setParent(b, a);
+            rankPage(a)[a & PAGE_MASK] = (byte) (rankA + 1);
+        }
+    }
+
+    private int parentOf(int idx) {
+        final int[] page = parent[idx >>> PAGE_SHIFT];
+        return page != null ? page[idx & PAGE_MASK] : idx;
+    }
+
+    private int rankOf(int idx) {
+        final byte[] page = rank[idx >>> PAGE_SHIFT];
+        return page != null ? page[idx & PAGE_MASK] : 0;
+    }
+
+    private void setParent(int idx, int p) {
+        final int pageIdx = idx >>> PAGE_SHIFT;
+        int[] page = parent[pageIdx];
+        if (page == null) {
+            page = new int[PAGE_SIZE];
+            final int base = pageIdx << PAGE_SHIFT;
+            for (int i = 0; i < PAGE_SIZE; ++i) {
+                page[i] = base + i;
+            }
+            parent[pageIdx] = page;
+        }
+        page[idx & PAGE_MASK] = p;
+    }
+
+    @NotNull
+    private byte[] rankPage(int idx) {
+        final int pageIdx = idx >>> PAGE_SHIFT;
+        if (rank[pageIdx] == null) {
+            rank[pageIdx] = new byte[PAGE_SIZE];
+        }
+        return rank[pageIdx];
+    }
+
+    private int indexOf(@NotNull TerminationCell cell) {
+        return cell.coord.row * cols + cell.coord.col;
+    }
+}
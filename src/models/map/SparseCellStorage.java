@@ -0,0 +1,222 @@
+package models.map;
+
+import models.map.cells.Cell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+
+import java.util.function.IntConsumer;
+
+/**
+ * {@link CellStorage} which divides the map into tiles of {@link SparseCellStorage#TILE_SIZE} x
+ * {@link SparseCellStorage#TILE_SIZE} cells, and only allocates the tiles which differ from the default map.
+ *
+ * <p>
+ * The default map has walls around the border and empty fillable cells everywhere else, which is what most cells of a
+ * large generated map look like. An unallocated tile is shared by all such regions and takes no memory. A tile is
+ * allocated the first time one of its cells is changed, and holds the cells of the tile encoded as in
+ * {@link CellCodec}.
+ * </p>
+ */
+class SparseCellStorage implements CellStorage {
+
+    private static final int TILE_SHIFT = 6;
+    /**
+     * Number of rows and columns in each tile.
+     */
+    static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final int rows;
+    private final int cols;
+    private final int tileCols;
+    /**
+     * Tiles in row-major order, or {@code null} for tiles which have not been changed from the default map.
+     */
+    @NotNull
+    private final byte[][] tiles;
+
+    /**
+     * Creates a storage with walls around the border, and empty fillable cells everywhere else.
+     *
+     * @param rows Number of rows.
+     * @param cols Number of columns.
+     */
+    SparseCellStorage(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.tileCols = (cols + TILE_MASK) >>> TILE_SHIFT;
+        this.tiles = new byte[((rows + TILE_MASK) >>> TILE_SHIFT) * tileCols][];
+    }
+
+    /**
+     * Creates a storage from the given cells.
+     *
+     * @param rows  Number of rows.
+     * @param cols  Number of columns.
+     * @param cells Cells to encode.
+     */
+    SparseCellStorage(int rows, int cols, @NotNull Cell[][] cells) {
+        this(rows, cols);
+
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                setCell(r * cols + c, cells[r][c]);
+            }
+        }
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public int kind(int idx) {
+        return CellCodec.kind(code(idx));
+    }
+
+    @Nullable
+    @Override
+    public Pipe.Shape shape(int idx) {
+        return CellCodec.shape(code(idx));
+    }
+
+    @Override
+    public int connections(int idx) {
+        final Pipe.Shape shape = CellCodec.shape(code(idx));
+        return shape != null ? shape.mask() : 0;
+    }
+
+    @Override
+    public boolean isFilled(int idx) {
+        return CellCodec.isFilled(code(idx));
+    }
+
+    @Override
+    public void setFilled(int idx) {
+        setCode(idx, CellCodec.fill(code(idx)));
+    }
+
+    @Override
+    public void setPipe(int idx, @Nullable Pipe.Shape shape) {
+        setCode(idx, CellCodec.encodeShape(shape));
+    }
+
+    @Override
+    public void setCell(int idx, @NotNull Cell cell) {
+        setCode(idx, CellCodec.encode(cell));
+    }
+
+    @NotNull
+    @Override
+    public Cell getCell(int idx) {
+        return CellCodec.decode(code(idx), new Coordinate(idx / cols, idx % cols));
+    }
+
+    @Override
+    public byte code(int idx) {
+        final int row = idx / cols;
+        final int col = idx - row * cols;
+        final byte[] tile = tiles[tileOf(row, col)];
+        if (tile == null) {
+            return defaultCode(row, col);
+        }
+        return tile[((row & TILE_MASK) << TILE_SHIFT) | (col & TILE_MASK)];
+    }
+
+    /**
+     * Visits the cells of the allocated tiles only.
+     */
+    @Override
+    public void forEachTouchedCell(@NotNull IntConsumer action) {
+        for (int t = 0; t < tiles.length; ++t) {
+            if (tiles[t] == null) {
+                continue;
+            }
+
+            final int firstRow = (t / tileCols) << TILE_SHIFT;
+            final int firstCol = (t % tileCols) << TILE_SHIFT;
+            final int lastRow = Math.min(rows, firstRow + TILE_SIZE);
+            final int lastCol = Math.min(cols, firstCol + TILE_SIZE);
+            for (int r = firstRow; r < lastRow; ++r) {
+                for (int c = firstCol; c < lastCol; ++c) {
+                    action.accept(r * cols + c);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isUntouched(int row, int col, int rowCount, int colCount) {
+        final int lastRow = Math.min(rows, row + rowCount) - 1;
+        final int lastCol = Math.min(cols, col + colCount) - 1;
+        for (int r = row >>> TILE_SHIFT; r <= lastRow >>> TILE_SHIFT; ++r) {
+            for (int c = col >>> TILE_SHIFT; c <= lastCol >>> TILE_SHIFT; ++c) {
+                if (tiles[r * tileCols + c] != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void setCode(int idx, byte code) {
+        final int row = idx / cols;
+        final int col = idx - row * cols;
+        final int t = tileOf(row, col);
+
+        byte[] tile = tiles[t];
+        if (tile == null) {
+            if (code == defaultCode(row, col)) {
+                return;
+            }
+            tile = allocateTile(t);
+        }
+        tile[((row & TILE_MASK) << TILE_SHIFT) | (col & TILE_MASK)] = code;
+    }
+
+    /**
+     * Allocates a tile, filled with the cells of the default map.
+     *
+     * @param t Index of the tile.
+     * @return The allocated tile.
+     */
+    @NotNull
+    private byte[] allocateTile(int t) {
+        final int firstRow = (t / tileCols) << TILE_SHIFT;
+        final int firstCol = (t % tileCols) << TILE_SHIFT;
+
+        final var tile = new byte[TILE_SIZE * TILE_SIZE];
+        for (int r = 0; r < TILE_SIZE; ++r) {
+            for (int c = 0; c < TILE_SIZE; ++c) {
+                tile[(r << TILE_SHIFT) | c] = defaultCode(firstRow + r, firstCol + c);
+            }
+        }
+
+        tiles[t] = tile;
+        return tile;
+    }
+
+    private int tileOf(int row, int col) {
+        return (row >>> TILE_SHIFT) * tileCols + (col >>> TILE_SHIFT);
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return Code of the cell in the default map.
+     */
+    private byte defaultCode(int row, int col) {
+        if (row <= 0 || row >= rows - 1 || col <= 0 || col >= cols - 1) {
+            return KIND_WALL;
+        }
+        return KIND_FILLABLE;
+    }
+}
@@ -26,6 +26,11 @@ public abstract class Cell implements MapElement {
      * Refer to README for the list of characters to their corresponding map element. If the character does not
      * represent a {@link TerminationCell}, the {@code terminationType} parameter can be ignored.
      * </p>
+     * <p>
+     * The letters {@code 'U'}, {@code 'D'}, {@code 'L'} and {@code 'R'} always represent a sink pointing up, down,
+     * left and right respectively, regardless of {@code terminationType}. This allows sinks which are not on the
+     * border of the map.
+     * </p>
      *
      * @param c               Character to parse.
      * @param coord           Coordinate of the newly created cell.
@@ -60,6 +65,14 @@ public abstract class Cell implements MapElement {
                     return new TerminationCell(coord, Direction.DOWN, terminationType);
                 }
                 break;
+            case 'U':
+                return new TerminationCell(coord, Direction.UP, TerminationCell.Type.SINK);
+            case 'D':
+                return new TerminationCell(coord, Direction.DOWN, TerminationCell.Type.SINK);
+            case 'L':
+                return new TerminationCell(coord, Direction.LEFT, TerminationCell.Type.SINK);
+            case 'R':
+                return new TerminationCell(coord, Direction.RIGHT, TerminationCell.Type.SINK);
         }
 
         return null;
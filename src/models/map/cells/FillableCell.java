@@ -13,6 +13,11 @@ import java.util.Optional;
 
 /**
  * Represents a {@link Cell} which can contain a pipe.
+ *
+ * <p>
+ * The pipe is stored as a slot of its shape and whether it is filled, so that a cell can be reused when pipes are
+ * placed into or removed from it.
+ * </p>
  */
 public class FillableCell extends Cell implements MapElement {
 
@@ -22,7 +27,8 @@ public class FillableCell extends Cell implements MapElement {
     private static final Image IMAGE = new Image(ResourceLoader.getResource("assets/images/empty-cell.png"));
 
     @Nullable
-    private final Pipe pipe;
+    private Pipe.Shape shape;
+    private boolean filled = false;
 
     /**
      * Constructs a {@link FillableCell}.
@@ -31,7 +37,7 @@ public class FillableCell extends Cell implements MapElement {
      */
     public FillableCell(@NotNull Coordinate coord) {
         super(coord);
-        this.pipe = null;
+        this.shape = null;
     }
 
     /**
@@ -42,15 +48,61 @@ public class FillableCell extends Cell implements MapElement {
      */
     public FillableCell(@NotNull Coordinate coord, @Nullable Pipe pipe) {
         super(coord);
-        this.pipe = pipe;
+        if (pipe != null) {
+            this.shape = pipe.getShape();
+            this.filled = pipe.getFilled();
+        }
     }
 
     /**
-     * @return An {@link Optional} representing the pipe in this tile.
+     * @return An {@link Optional} representing the pipe in this tile. The returned pipe is created on each call, so
+     * changes to it are not reflected in this cell.
      */
     @NotNull
     public Optional<Pipe> getPipe() {
-        return Optional.ofNullable(pipe);
+        if (shape == null) {
+            return Optional.empty();
+        }
+
+        final var pipe = new Pipe(shape);
+        if (filled) {
+            pipe.setFilled();
+        }
+        return Optional.of(pipe);
+    }
+
+    /**
+     * @return Shape of the pipe in this cell, or {@code null} if the cell is empty.
+     */
+    @Nullable
+    public Pipe.Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * @return Whether the pipe in this cell is filled.
+     */
+    public boolean isFilled() {
+        return filled;
+    }
+
+    /**
+     * Replaces the pipe in this cell with an unfilled pipe.
+     *
+     * @param shape Shape of the new pipe, or {@code null} to empty the cell.
+     */
+    public void setPipe(@Nullable Pipe.Shape shape) {
+        this.shape = shape;
+        this.filled = false;
+    }
+
+    /**
+     * Sets the pipe in this cell as filled. Does nothing if the cell is empty.
+     */
+    public void setFilled() {
+        if (shape != null) {
+            filled = true;
+        }
     }
 
     /**
@@ -58,7 +110,7 @@ public class FillableCell extends Cell implements MapElement {
      */
     @Override
     public char toSingleChar() {
-        return pipe != null ? pipe.toSingleChar() : '.';
+        return shape != null ? shape.getCharByState(filled) : '.';
     }
 
     /**
@@ -115,6 +115,41 @@ public class TerminationCell extends Cell{
         }
     }
 
+    /**
+     * Returns the serialized representation of this cell at a position of the map.
+     *
+     * <p>
+     * Arrows are read as sinks on the border of the map and as sources elsewhere, so a sink which is not on the border
+     * is written as one of the letters accepted by {@link Cell#fromChar(char, Coordinate, Type)} instead.
+     * </p>
+     *
+     * @param onBorder Whether the cell is on the border of the map.
+     * @return Serialized representation of this cell.
+     * @throws IllegalStateException if this is a source on the border, which cannot be represented.
+     */
+    @NotNull
+    public String toSerializedRep(boolean onBorder) {
+        if (type == Type.SOURCE && onBorder) {
+            throw new IllegalStateException("Sources on the border of the map cannot be serialized");
+        }
+        if (type == Type.SOURCE || onBorder) {
+            return toSerializedRep();
+        }
+
+        switch (pointingTo) {
+            case UP:
+                return "U";
+            case DOWN:
+                return "D";
+            case LEFT:
+                return "L";
+            case RIGHT:
+                return "R";
+            default:
+                throw new IllegalStateException("Unknown pointingTo value");
+        }
+    }
+
     public enum Type {
         SOURCE, SINK
     }
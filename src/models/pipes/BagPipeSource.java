@@ -0,0 +1,39 @@
+package models.pipes;
+
+import org.jetbrains.annotations.NotNull;
+import util.GenerationContext;
+
+/**
+ * {@link PipeSource} which draws every shape once from a shuffled bag before refilling it, so each run of seven pipes
+ * starting at a multiple of seven has one pipe of each shape.
+ */
+public class BagPipeSource extends BatchedPipeSource {
+
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+    private static final int BAGS_PER_BATCH = 8;
+
+    @NotNull
+    private final GenerationContext context;
+
+    /**
+     * @param context Randomness of the shuffles.
+     */
+    public BagPipeSource(@NotNull GenerationContext context) {
+        super(SHAPES.length * BAGS_PER_BATCH);
+        this.context = context;
+    }
+
+    @Override
+    protected void fill(@NotNull Pipe.Shape[] batch) {
+        for (int bag = 0; bag < batch.length; bag += SHAPES.length) {
+            System.arraycopy(SHAPES, 0, batch, bag, SHAPES.length);
+            // Fisher-Yates shuffle of the bag
+            for (int i = SHAPES.length - 1; i > 0; --i) {
+                final int j = context.nextInt(i + 1);
+                final var tmp = batch[bag + i];
+                batch[bag + i] = batch[bag + j];
+                batch[bag + j] = tmp;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package models.pipes;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link PipeSource} which computes its shapes in batches.
+ *
+ * <p>
+ * The batch is allocated once and refilled in place when it runs out, so drawing a shape is an array read.
+ * </p>
+ */
+public abstract class BatchedPipeSource implements PipeSource {
+
+    @NotNull
+    private final Pipe.Shape[] batch;
+    private int position;
+
+    /**
+     * @param batchSize Number of shapes computed at a time.
+     * @throws IllegalArgumentException if the batch size is not positive.
+     */
+    protected BatchedPipeSource(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        batch = new Pipe.Shape[batchSize];
+        position = batchSize;
+    }
+
+    @NotNull
+    @Override
+    public final Pipe.Shape next() {
+        if (position == batch.length) {
+            fill(batch);
+            position = 0;
+        }
+        return batch[position++];
+    }
+
+    /**
+     * Computes the next batch of shapes.
+     *
+     * @param batch Array to fill completely, in the order the shapes are drawn.
+     */
+    protected abstract void fill(@NotNull Pipe.Shape[] batch);
+}
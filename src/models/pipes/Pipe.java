@@ -39,30 +39,35 @@ public class Pipe implements MapElement {
         return filled;
     }
 
+    /**
+     * @return Shape of this pipe.
+     */
+    @NotNull
+    public Shape getShape() {
+        return shape;
+    }
+
     /**
      * @return List of connections for this pipe.
-     * @throws IllegalStateException if {@code this} pipe cannot be identified.
      */
     @NotNull
     public Direction[] getConnections() {
-        switch (shape) {
-            case HORIZONTAL:
-                return new Direction[]{Direction.LEFT, Direction.RIGHT};
-            case VERTICAL:
-                return new Direction[]{Direction.UP, Direction.DOWN};
-            case TOP_LEFT:
-                return new Direction[]{Direction.UP, Direction.LEFT};
-            case TOP_RIGHT:
-                return new Direction[]{Direction.UP, Direction.RIGHT};
-            case BOTTOM_LEFT:
-                return new Direction[]{Direction.DOWN, Direction.LEFT};
-            case BOTTOM_RIGHT:
-                return new Direction[]{Direction.DOWN, Direction.RIGHT};
-            case CROSS:
-                return Direction.values();
-            default:
-                throw new IllegalStateException("Unknown shape");
-        }
+        return shape.getConnections();
+    }
+
+    /**
+     * @return Connections of this pipe, as a bitwise-OR of {@link Direction#mask()}.
+     */
+    public int mask() {
+        return shape.mask();
+    }
+
+    /**
+     * @param d Direction to check.
+     * @return Whether this pipe has an opening towards {@code d}.
+     */
+    public boolean connects(@NotNull Direction d) {
+        return shape.connects(d);
     }
 
     /**
@@ -118,13 +123,13 @@ public class Pipe implements MapElement {
      * Helper class for different pipe shapes.
      */
     public enum Shape {
-        HORIZONTAL("HZ", PipePatterns.Filled.HORIZONTAL, PipePatterns.Unfilled.HORIZONTAL),
-        VERTICAL("VT", PipePatterns.Filled.VERTICAL, PipePatterns.Unfilled.VERTICAL),
-        TOP_LEFT("TL", PipePatterns.Filled.TOP_LEFT, PipePatterns.Unfilled.TOP_LEFT),
-        TOP_RIGHT("TR", PipePatterns.Filled.TOP_RIGHT, PipePatterns.Unfilled.TOP_RIGHT),
-        BOTTOM_LEFT("BL", PipePatterns.Filled.BOTTOM_LEFT, PipePatterns.Unfilled.BOTTOM_LEFT),
-        BOTTOM_RIGHT("BR", PipePatterns.Filled.BOTTOM_RIGHT, PipePatterns.Unfilled.BOTTOM_RIGHT),
-        CROSS("CR", PipePatterns.Filled.CROSS, PipePatterns.Unfilled.CROSS);
+        HORIZONTAL("HZ", PipePatterns.Filled.HORIZONTAL, PipePatterns.Unfilled.HORIZONTAL, Direction.LEFT, Direction.RIGHT),
+        VERTICAL("VT", PipePatterns.Filled.VERTICAL, PipePatterns.Unfilled.VERTICAL, Direction.UP, Direction.DOWN),
+        TOP_LEFT("TL", PipePatterns.Filled.TOP_LEFT, PipePatterns.Unfilled.TOP_LEFT, Direction.UP, Direction.LEFT),
+        TOP_RIGHT("TR", PipePatterns.Filled.TOP_RIGHT, PipePatterns.Unfilled.TOP_RIGHT, Direction.UP, Direction.RIGHT),
+        BOTTOM_LEFT("BL", PipePatterns.Filled.BOTTOM_LEFT, PipePatterns.Unfilled.BOTTOM_LEFT, Direction.DOWN, Direction.LEFT),
+        BOTTOM_RIGHT("BR", PipePatterns.Filled.BOTTOM_RIGHT, PipePatterns.Unfilled.BOTTOM_RIGHT, Direction.DOWN, Direction.RIGHT),
+        CROSS("CR", PipePatterns.Filled.CROSS, PipePatterns.Unfilled.CROSS, Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT);
 
         private static final Image CORNER_UNFILLED = new Image(ResourceLoader.getResource("assets/images/top-left-unfilled.png"));
         private static final Image CORNER_FILLED = new Image(ResourceLoader.getResource("assets/images/top-left-filled.png"));
@@ -137,14 +142,54 @@ public class Pipe implements MapElement {
         final String rep;
         final char filledChar;
         final char unfilledChar;
+        @NotNull
+        private final Direction[] connections;
+        /**
+         * Connections of this shape, as a bitwise-OR of {@link Direction#mask()}.
+         */
+        private final int mask;
 
-        Shape(@NotNull String rep, char filled, char unfilled) {
+        Shape(@NotNull String rep, char filled, char unfilled, @NotNull Direction... connections) {
             this.rep = rep;
             this.filledChar = filled;
             this.unfilledChar = unfilled;
+            this.connections = connections;
+
+            int mask = 0;
+            for (Direction d : connections) {
+                mask |= d.mask();
+            }
+            this.mask = mask;
+        }
+
+        /**
+         * @return Connections of this shape, as a bitwise-OR of {@link Direction#mask()}.
+         */
+        public int mask() {
+            return mask;
+        }
+
+        /**
+         * @param d Direction to check.
+         * @return Whether this shape has an opening towards {@code d}.
+         */
+        public boolean connects(@NotNull Direction d) {
+            return (mask & d.mask()) != 0;
         }
 
-        char getCharByState(boolean isFilled) {
+        /**
+         * @return List of connections for this shape.
+         */
+        @NotNull
+        public Direction[] getConnections() {
+            return connections.clone();
+        }
+
+        /**
+         * @param isFilled Whether the pipe is filled.
+         * @return The character representation of a pipe of this shape.
+         */
+        public char getCharByState(boolean isFilled) {
             return isFilled ? filledChar : unfilledChar;
         }
 
@@ -0,0 +1,19 @@
+package models.pipes;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Strategy deciding the shapes of the pipes generated by a {@link models.PipeQueue}.
+ *
+ * <p>
+ * A source is only used by the queue it was given to, so implementations need not be thread-safe.
+ * </p>
+ */
+public interface PipeSource {
+
+    /**
+     * @return Shape of the next pipe.
+     */
+    @NotNull
+    Pipe.Shape next();
+}
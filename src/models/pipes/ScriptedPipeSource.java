@@ -0,0 +1,67 @@
+package models.pipes;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PipeSource} which draws a fixed sequence of shapes, starting over once it runs out.
+ */
+public class ScriptedPipeSource implements PipeSource {
+
+    @NotNull
+    private final Pipe.Shape[] script;
+    private int position = 0;
+
+    /**
+     * @param script Shapes to draw, in order.
+     * @throws IllegalArgumentException if the script is empty.
+     */
+    public ScriptedPipeSource(@NotNull List<Pipe.Shape> script) {
+        if (script.isEmpty()) {
+            throw new IllegalArgumentException("The script must not be empty");
+        }
+        this.script = script.toArray(new Pipe.Shape[0]);
+    }
+
+    /**
+     * Loads a script from a file.
+     *
+     * <p>
+     * The file lists the shapes in the same format as the pipes of a map file, e.g. {@code HZ, VT, CR}. Shapes may be
+     * split across lines, and blank lines and lines starting with {@code '#'} are ignored.
+     * </p>
+     *
+     * @param path Path to the script.
+     * @return A source drawing the shapes of the script.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file contains an unknown shape or no shapes.
+     */
+    @NotNull
+    public static ScriptedPipeSource fromFile(@NotNull Path path) throws IOException {
+        final var script = new ArrayList<Pipe.Shape>();
+        for (var line : Files.readAllLines(path)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            for (var rep : line.split(",")) {
+                if (!rep.isBlank()) {
+                    script.add(Pipe.fromString(rep).getShape());
+                }
+            }
+        }
+        return new ScriptedPipeSource(script);
+    }
+
+    @NotNull
+    @Override
+    public Pipe.Shape next() {
+        final var shape = script[position];
+        position = (position + 1) % script.length;
+        return shape;
+    }
+}
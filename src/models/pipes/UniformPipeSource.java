@@ -0,0 +1,31 @@
+package models.pipes;
+
+import org.jetbrains.annotations.NotNull;
+import util.GenerationContext;
+
+/**
+ * {@link PipeSource} which draws every shape with the same probability.
+ */
+public class UniformPipeSource extends BatchedPipeSource {
+
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+    private static final int BATCH_SIZE = 64;
+
+    @NotNull
+    private final GenerationContext context;
+
+    /**
+     * @param context Randomness of the shapes.
+     */
+    public UniformPipeSource(@NotNull GenerationContext context) {
+        super(BATCH_SIZE);
+        this.context = context;
+    }
+
+    @Override
+    protected void fill(@NotNull Pipe.Shape[] batch) {
+        for (int i = 0; i < batch.length; ++i) {
+            batch[i] = SHAPES[context.nextInt(SHAPES.length)];
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package models.pipes;
+
+import org.jetbrains.annotations.NotNull;
+import util.GenerationContext;
+
+/**
+ * {@link PipeSource} which draws each shape with a probability proportional to its weight.
+ */
+public class WeightedPipeSource extends BatchedPipeSource {
+
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+    private static final int BATCH_SIZE = 64;
+
+    @NotNull
+    private final GenerationContext context;
+    /**
+     * Sum of the weights of each shape and the shapes before it, in the order of {@link Pipe.Shape#values()}.
+     */
+    @NotNull
+    private final int[] cumulativeWeights;
+
+    /**
+     * @param context Randomness of the shapes.
+     * @param weights Weight of each shape, in the order of {@link Pipe.Shape#values()}.
+     * @throws IllegalArgumentException if there is not one weight per shape, any weight is negative, or all weights
+     *                                  are zero.
+     */
+    public WeightedPipeSource(@NotNull GenerationContext context, @NotNull int... weights) {
+        super(BATCH_SIZE);
+        if (weights.length != SHAPES.length) {
+            throw new IllegalArgumentException("There must be one weight per shape");
+        }
+
+        cumulativeWeights = new int[SHAPES.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; ++i) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Weights must not be negative");
+            }
+            total = Math.addExact(total, weights[i]);
+            cumulativeWeights[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+        this.context = context;
+    }
+
+    @Override
+    protected void fill(@NotNull Pipe.Shape[] batch) {
+        final int total = cumulativeWeights[cumulativeWeights.length - 1];
+        for (int i = 0; i < batch.length; ++i) {
+            final int r = context.nextInt(total);
+            int shape = 0;
+            while (cumulativeWeights[shape] <= r) {
+                ++shape;
+            }
+            batch[i] = SHAPES[shape];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package models.solver;
+
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One action of a {@link Solution}, which is either placing the next pipe of the queue or skipping it.
+ */
+public final class Action {
+
+    /**
+     * Type of an action.
+     */
+    public enum Type {
+        /**
+         * The next pipe is placed into a cell, as in {@link textgame.game.Game#placePipe(int, char)}.
+         */
+        PLACE,
+        /**
+         * The next pipe is discarded, as in {@link textgame.game.Game#skipPipe()}.
+         */
+        SKIP
+    }
+
+    @NotNull
+    private final Type type;
+    @NotNull
+    private final Pipe.Shape shape;
+    private final int row;
+    private final int col;
+
+    private Action(@NotNull Type type, @NotNull Pipe.Shape shape, int row, int col) {
+        this.type = type;
+        this.shape = shape;
+        this.row = row;
+        this.col = col;
+    }
+
+    /**
+     * @param shape Shape of the next pipe.
+     * @param row   Row of the cell to place the pipe into.
+     * @param col   Column of the cell to place the pipe into.
+     * @return Action placing the next pipe.
+     */
+    @NotNull
+    static Action place(@NotNull Pipe.Shape shape, int row, int col) {
+        return new Action(Type.PLACE, shape, row, col);
+    }
+
+    /**
+     * @param shape Shape of the next pipe.
+     * @return Action skipping the next pipe.
+     */
+    @NotNull
+    static Action skip(@NotNull Pipe.Shape shape) {
+        return new Action(Type.SKIP, shape, -1, -1);
+    }
+
+    @NotNull
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return Shape of the pipe which is placed or skipped.
+     */
+    @NotNull
+    public Pipe.Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * @return Row of the cell the pipe is placed into, or {@code -1} for {@link Type#SKIP}.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return Column of the cell the pipe is placed into, or {@code -1} for {@link Type#SKIP}.
+     */
+    public int getCol() {
+        return col;
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.SKIP) {
+            return "SKIP " + shape;
+        }
+        return "PLACE " + shape + " at (" + row + ", " + col + ")";
+    }
+}
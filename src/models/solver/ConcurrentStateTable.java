@@ -0,0 +1,82 @@
+package models.solver;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free {@link StateTable} with a fixed number of slots, shared by the workers of a {@link ParallelSolver}.
+ *
+ * <p>
+ * Each slot is one {@code long} holding the upper bits of the hash and the queue position, so a slot is read and
+ * updated with a single compare-and-set. A state is looked up in at most {@link ConcurrentStateTable#MAX_PROBES}
+ * consecutive slots; if all of them hold other states, the state is reported as new without being recorded.
+ * </p>
+ */
+final class ConcurrentStateTable implements StateTable {
+
+    private static final int POSITION_BITS = 16;
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+    /**
+     * Set in every stored key, so that a stored slot is never {@code 0}.
+     */
+    private static final long OCCUPIED = 1L << POSITION_BITS;
+    private static final int MAX_PROBES = 16;
+
+    @NotNull
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    /**
+     * @param capacity Minimum number of slots. Rounded up to a power of two.
+     */
+    ConcurrentStateTable(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(MAX_PROBES, capacity - 1)) << 1;
+        slots = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    @Override
+    public boolean visit(long hash, int queuePos) {
+        if (queuePos > POSITION_MASK) {
+            return true;
+        }
+
+        final long key = (hash & ~POSITION_MASK) | OCCUPIED;
+        int i = (int) (hash ^ (hash >>> 32)) & mask;
+        for (int probe = 0; probe < MAX_PROBES; ) {
+            final long slot = slots.get(i);
+            if (slot == 0) {
+                if (slots.compareAndSet(i, 0, key | queuePos)) {
+                    return true;
+                }
+                // another worker took the slot; read it again
+                continue;
+            }
+
+            if ((slot & ~POSITION_MASK) == key) {
+                if (queuePos >= (slot & POSITION_MASK)) {
+                    return false;
+                }
+                if (slots.compareAndSet(i, slot, key | queuePos)) {
+                    return true;
+                }
+                continue;
+            }
+
+            i = (i + 1) & mask;
+            ++probe;
+        }
+        return true;
+    }
+
+    /**
+     * Removes all states. Must not be called while a search is using the table.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < slots.length(); ++i) {
+            slots.set(i, 0);
+        }
+    }
+}
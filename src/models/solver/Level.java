@@ -0,0 +1,261 @@
+package models.solver;
+
+import models.map.GridTraversal;
+import models.map.Map;
+import models.map.cells.Cell;
+import models.map.cells.FillableCell;
+import models.map.cells.TerminationCell;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Coordinate;
+import util.Direction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable description of a level, as read by the {@link Solver}.
+ *
+ * <p>
+ * Cells are addressed by their index {@code row * cols + col}. The state of every cell is encoded into one byte, so a
+ * search node only needs to copy a {@code byte[]} of the size of the map. The level also holds, for every sink, a
+ * lower bound of the number of pipes needed to reach the sink from every cell.
+ * </p>
+ */
+final class Level {
+
+    static final byte KIND_WALL = 0;
+    static final byte KIND_FILLABLE = 1;
+    static final byte KIND_SOURCE = 2;
+    static final byte KIND_SINK = 3;
+
+    /**
+     * Bits of a cell state holding the ordinal of the pipe shape plus one, or {@code 0} for an empty cell.
+     */
+    static final int SHAPE_BITS = 0x07;
+    /**
+     * Bit of a cell state which is set if the cell is filled.
+     */
+    static final int FILLED = 0x08;
+    /**
+     * Bit of a cell state which is set if the cell is connected to a source.
+     */
+    static final int CONNECTED = 0x10;
+
+    /**
+     * Value of {@link Level#sinkDistance(int, int)} for cells which cannot reach the sink.
+     */
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    final int rows;
+    final int cols;
+    final int delay;
+    @NotNull
+    final Pipe.Shape[] shapes;
+    /**
+     * For every queue position and shape, the index of the first pipe of that shape at or after the position, or
+     * {@code -1}. Stored as {@code pos * SHAPES.length + shape}.
+     */
+    @NotNull
+    private final int[] nextOfShape;
+    @NotNull
+    final byte[] kinds;
+    /**
+     * State of every cell before any pipe is placed.
+     */
+    @NotNull
+    final byte[] initialCells;
+
+    /**
+     * Index of the cell each source is pointing to.
+     */
+    @NotNull
+    final int[] sourceTargets;
+    /**
+     * Opening which the pipe in the target cell of each source needs, as in {@link Direction#mask()}.
+     */
+    @NotNull
+    final int[] sourceEntries;
+    /**
+     * Index of each sink.
+     */
+    @NotNull
+    final int[] sinkCells;
+    /**
+     * Index of the cell which must be connected to each sink, or {@code -1} if there is no such fillable cell.
+     */
+    @NotNull
+    final int[] sinkEntries;
+    /**
+     * Opening which the pipe in the entry cell of each sink needs.
+     */
+    @NotNull
+    final int[] sinkOpenings;
+    @NotNull
+    private final int[][] sinkDistances;
+
+    /**
+     * @param map    Map of the level. It is only read.
+     * @param delay  Number of pipes placed before the water starts flowing.
+     * @param shapes Shapes of the pipes, in the order they are drawn from the queue.
+     */
+    Level(@NotNull Map map, int delay, @NotNull List<Pipe.Shape> shapes) {
+        final var snapshot = map.getSnapshot();
+        this.rows = snapshot.getRows();
+        this.cols = snapshot.getCols();
+        this.delay = delay;
+        this.shapes = shapes.toArray(new Pipe.Shape[0]);
+        this.nextOfShape = new int[(this.shapes.length + 1) * SHAPES.length];
+        Arrays.fill(nextOfShape, this.shapes.length * SHAPES.length, nextOfShape.length, -1);
+        for (int pos = this.shapes.length - 1; pos >= 0; --pos) {
+            System.arraycopy(nextOfShape, (pos + 1) * SHAPES.length, nextOfShape, pos * SHAPES.length, SHAPES.length);
+            nextOfShape[pos * SHAPES.length + this.shapes[pos].ordinal()] = pos;
+        }
+
+        final int size = rows * cols;
+        kinds = new byte[size];
+        initialCells = new byte[size];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                final Cell cell = map.getCell(new Coordinate(r, c));
+                final int idx = r * cols + c;
+                if (cell instanceof FillableCell) {
+                    final var fillable = (FillableCell) cell;
+                    kinds[idx] = KIND_FILLABLE;
+                    initialCells[idx] = encode(fillable.getShape(), fillable.isFilled());
+                } else if (cell instanceof TerminationCell) {
+                    final var type = ((TerminationCell) cell).type;
+                    kinds[idx] = type == TerminationCell.Type.SOURCE ? KIND_SOURCE : KIND_SINK;
+                } else {
+                    kinds[idx] = KIND_WALL;
+                }
+            }
+        }
+
+        final List<TerminationCell> sources = map.getSources();
+        sourceTargets = new int[sources.size()];
+        sourceEntries = new int[sources.size()];
+        for (int i = 0; i < sources.size(); ++i) {
+            final var source = sources.get(i);
+            sourceTargets[i] = fillableIndex(source.coord.row + source.pointingTo.getRowOffset(),
+                    source.coord.col + source.pointingTo.getColOffset());
+            sourceEntries[i] = source.pointingTo.getOpposite().mask();
+        }
+
+        final List<TerminationCell> sinks = map.getSinks();
+        sinkCells = new int[sinks.size()];
+        sinkEntries = new int[sinks.size()];
+        sinkOpenings = new int[sinks.size()];
+        sinkDistances = new int[sinks.size()][];
+        final var traversal = new GridTraversal(rows, cols);
+        final int placedPipes = countPlacedPipes();
+        for (int i = 0; i < sinks.size(); ++i) {
+            final var sink = sinks.get(i);
+            sinkCells[i] = sink.coord.row * cols + sink.coord.col;
+            sinkEntries[i] = fillableIndex(sink.coord.row - sink.pointingTo.getRowOffset(),
+                    sink.coord.col - sink.pointingTo.getColOffset());
+            sinkOpenings[i] = sink.pointingTo.mask();
+            sinkDistances[i] = computeSinkDistances(traversal, sinkEntries[i], placedPipes);
+        }
+    }
+
+    /**
+     * @param shape  Shape of the pipe in the cell, or {@code null} for an empty cell.
+     * @param filled Whether the cell is filled.
+     * @return State of the cell.
+     */
+    static byte encode(@Nullable Pipe.Shape shape, boolean filled) {
+        return (byte) ((shape != null ? shape.ordinal() + 1 : 0) | (filled ? FILLED : 0));
+    }
+
+    /**
+     * @param state State of a cell.
+     * @return Connections of the pipe in the cell, as a bitwise-OR of {@link Direction#mask()}.
+     */
+    static int connections(int state) {
+        final int shape = state & SHAPE_BITS;
+        return shape != 0 ? SHAPES[shape - 1].mask() : 0;
+    }
+
+    /**
+     * @param idx Index of the cell.
+     * @param d   Direction to step towards.
+     * @return Index of the neighbouring cell, or {@code -1} if it is outside the map.
+     */
+    int neighbour(int idx, @NotNull Direction d) {
+        final int r = idx / cols + d.getRowOffset();
+        final int c = idx % cols + d.getColOffset();
+        if (r < 0 || r >= rows || c < 0 || c >= cols) {
+            return -1;
+        }
+        return r * cols + c;
+    }
+
+    /**
+     * @param pos   Queue position.
+     * @param shape Shape of a pipe.
+     * @return Index of the first pipe of the shape at or after the position, or {@code -1} if there is none.
+     */
+    int nextOfShape(int pos, @NotNull Pipe.Shape shape) {
+        return nextOfShape[pos * SHAPES.length + shape.ordinal()];
+    }
+
+    /**
+     * @param sink Index of the sink in {@link Map#getSinks()}.
+     * @param idx  Index of an empty cell.
+     * @return Lower bound of the number of pipes needed to connect the cell to the sink, including the cell itself, or
+     * {@link Level#UNREACHABLE}.
+     */
+    int sinkDistance(int sink, int idx) {
+        return sinkDistances[sink][idx];
+    }
+
+    /**
+     * Computes {@link Level#sinkDistance(int, int)} for every cell.
+     *
+     * <p>
+     * The distance is the number of cells on a shortest route through fillable cells which are not filled. Pipes which
+     * are already placed do not need to be placed again, so the number of such pipes is subtracted from every distance
+     * to keep it a lower bound.
+     * </p>
+     */
+    @NotNull
+    private int[] computeSinkDistances(@NotNull GridTraversal traversal, int entry, int placedPipes) {
+        final var distances = new int[rows * cols];
+        Arrays.fill(distances, UNREACHABLE);
+        if (entry == -1 || (initialCells[entry] & FILLED) != 0) {
+            return distances;
+        }
+
+        traversal.bfs(entry, (from, dir, to) -> kinds[to] == KIND_FILLABLE && (initialCells[to] & FILLED) == 0,
+                (idx, distance) -> {
+                    distances[idx] = Math.max(1, distance + 1 - placedPipes);
+                    return true;
+                });
+        return distances;
+    }
+
+    private int countPlacedPipes() {
+        int count = 0;
+        for (byte state : initialCells) {
+            if ((state & SHAPE_BITS) != 0 && (state & FILLED) == 0) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Index of the cell, or {@code -1} if it is outside the map or not a fillable cell.
+     */
+    private int fillableIndex(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return -1;
+        }
+        final int idx = row * cols + col;
+        return kinds[idx] == KIND_FILLABLE ? idx : -1;
+    }
+}
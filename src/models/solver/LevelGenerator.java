@@ -0,0 +1,570 @@
+package models.solver;
+
+import io.GameProperties;
+import models.map.GridTraversal;
+import models.map.Map;
+import models.map.cells.Cell;
+import models.map.cells.FillableCell;
+import models.map.cells.TerminationCell;
+import models.map.cells.Wall;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import util.Coordinate;
+import util.Direction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates random levels which are known to be solvable.
+ *
+ * <p>
+ * A level is built around a planned solution. The sink is placed on the border and the source inside the map, and the
+ * shortest route between them is lengthened until it reaches the targeted length: a straight step of the route is
+ * replaced by a detour of three steps to one side, and a straight run of three cells may be looped back through its
+ * middle cell, which then needs a cross pipe. The remaining cells are turned into walls at random, and the queue holds
+ * the pipes of the route in order, mixed with pipes which must be skipped.
+ * </p>
+ * <p>
+ * The planned solution is then played with the flow rules of {@link SearchNode}, the same as the {@link Solver} uses,
+ * so the level is only returned once its solution is known to connect the sink before the water spills. A route
+ * without crosses always passes, since the water never catches up with the pipes; if a route with crosses fails, it is
+ * planned again, and crosses are dropped on the last attempt.
+ * </p>
+ * <p>
+ * Every step is linear in the size of the map, so a 64x64 level is generated in a few milliseconds.
+ * </p>
+ */
+public class LevelGenerator {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    private static final int ATTEMPTS = 4;
+    /**
+     * Number of random detours tried per cell of the targeted route length.
+     */
+    private static final int DETOUR_TRIES_PER_CELL = 16;
+    private static final int SOURCE_CANDIDATES = 16;
+
+    /**
+     * Targets of a generated level.
+     */
+    public static final class Difficulty {
+
+        public static final Difficulty EASY = new Difficulty(0.05, 1.2, 0, 0.05, 0);
+        public static final Difficulty NORMAL = new Difficulty(0.12, 2, 1, 0.15, 0.2);
+        public static final Difficulty HARD = new Difficulty(0.25, 3, 3, 0.3, 0.4);
+
+        final double pathCoverage;
+        final double detourRatio;
+        final int crosses;
+        final double wallDensity;
+        final double decoyRate;
+
+        /**
+         * @param pathCoverage Length of the route, as a fraction of the cells inside the border.
+         * @param detourRatio  Length of the route, as a multiple of the distance between the source and the sink.
+         * @param crosses      Number of crosses the route needs.
+         * @param wallDensity  Fraction of the cells off the route which are walls.
+         * @param decoyRate    Number of pipes to skip in the queue, per pipe of the route.
+         * @throws IllegalArgumentException if any target is negative, the fractions exceed {@code 1}, or the detour
+         *                                  ratio is less than {@code 1}.
+         */
+        public Difficulty(double pathCoverage, double detourRatio, int crosses, double wallDensity,
+                          double decoyRate) {
+            if (pathCoverage < 0 || pathCoverage > 1 || wallDensity < 0 || wallDensity > 1) {
+                throw new IllegalArgumentException("The path coverage and wall density must be between 0 and 1");
+            }
+            if (detourRatio < 1 || crosses < 0 || decoyRate < 0) {
+                throw new IllegalArgumentException("Invalid difficulty targets");
+            }
+            this.pathCoverage = pathCoverage;
+            this.detourRatio = detourRatio;
+            this.crosses = crosses;
+            this.wallDensity = wallDensity;
+            this.decoyRate = decoyRate;
+        }
+    }
+
+    /**
+     * A generated level and the difficulty it reached.
+     */
+    public static final class GeneratedLevel {
+
+        @NotNull
+        private final GameProperties properties;
+        private final int pathLength;
+        private final int detours;
+        private final int crosses;
+        private final int turns;
+
+        private GeneratedLevel(@NotNull GameProperties properties, int pathLength, int detours, int crosses,
+                               int turns) {
+            this.properties = properties;
+            this.pathLength = pathLength;
+            this.detours = detours;
+            this.crosses = crosses;
+            this.turns = turns;
+        }
+
+        /**
+         * @return Cells, delay and pipe queue of the level.
+         */
+        @NotNull
+        public GameProperties getProperties() {
+            return properties;
+        }
+
+        /**
+         * @return Number of pipes in the planned solution.
+         */
+        public int getPathLength() {
+            return pathLength;
+        }
+
+        /**
+         * @return Number of pipes in the planned solution beyond the shortest route between the source and the sink.
+         */
+        public int getDetours() {
+            return detours;
+        }
+
+        /**
+         * @return Number of cross pipes the planned solution passes through twice.
+         */
+        public int getCrosses() {
+            return crosses;
+        }
+
+        /**
+         * @return Number of corner pipes in the planned solution.
+         */
+        public int getTurns() {
+            return turns;
+        }
+    }
+
+    @NotNull
+    private final SplittableRandom random;
+
+    /**
+     * Creates a generator with a random seed.
+     */
+    public LevelGenerator() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * @param random Source of randomness. Levels generated from the same seed, in the same order, are the same.
+     */
+    public LevelGenerator(@NotNull SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * Generates a level.
+     *
+     * @param rows       Number of rows, including the border.
+     * @param cols       Number of columns, including the border.
+     * @param delay      Number of pipes placed before the water starts flowing.
+     * @param difficulty Targets of the level.
+     * @return A level whose planned solution connects the sink in time.
+     * @throws IllegalArgumentException if the map is smaller than 4x4, or the delay is not positive.
+     */
+    @NotNull
+    public GeneratedLevel generate(int rows, int cols, int delay, @NotNull Difficulty difficulty) {
+        if (rows < 4 || cols < 4) {
+            throw new IllegalArgumentException("The map must be at least 4x4");
+        }
+        if (delay < 1) {
+            throw new IllegalArgumentException("The delay must be positive");
+        }
+
+        for (int attempt = 1; attempt <= ATTEMPTS; ++attempt) {
+            final var plan = new Plan(rows, cols, random);
+            plan.build(difficulty, attempt < ATTEMPTS ? difficulty.crosses : 0);
+            final var level = plan.toLevel(delay, difficulty);
+            if (plan.isSolution(level)) {
+                return level;
+            }
+        }
+        throw new IllegalStateException("A route without crosses failed to connect the sink");
+    }
+
+    /**
+     * Route of a level, as a list of visits to cells. A cell with a cross pipe is visited twice.
+     */
+    private static final class Plan {
+
+        private final int rows;
+        private final int cols;
+        @NotNull
+        private final SplittableRandom random;
+
+        /**
+         * Number of visits to each cell. The border, the source and the sink count as visited.
+         */
+        @NotNull
+        private final byte[] visits;
+        @NotNull
+        private int[] cellOf = new int[64];
+        @NotNull
+        private int[] next = new int[64];
+        @NotNull
+        private int[] prev = new int[64];
+        private int nodeCount = 0;
+        private int head = -1;
+        private int cellCount = 0;
+        private int crossCount = 0;
+
+        private int source;
+        private Direction sourceDir;
+        private int sink;
+        private Direction sinkDir;
+        private int shortest;
+
+        /**
+         * Cells of the planned solution, in order, and the position of each pipe in the queue.
+         */
+        @NotNull
+        private int[] placements = new int[0];
+        @NotNull
+        private int[] placementPipes = new int[0];
+
+        Plan(int rows, int cols, @NotNull SplittableRandom random) {
+            this.rows = rows;
+            this.cols = cols;
+            this.random = random;
+            visits = new byte[rows * cols];
+            for (int idx = 0; idx < visits.length; ++idx) {
+                if (!isInterior(idx)) {
+                    visits[idx] = 1;
+                }
+            }
+        }
+
+        void build(@NotNull Difficulty difficulty, int crosses) {
+            final int interior = (rows - 2) * (cols - 2);
+            final int targetLength = Math.max(1, (int) (difficulty.pathCoverage * interior));
+
+            placeSink();
+            placeSource((int) (targetLength / difficulty.detourRatio));
+            shortest = cellCount;
+
+            for (int tries = 0; crossCount < crosses && tries < crosses * DETOUR_TRIES_PER_CELL * 4; ++tries) {
+                tryLoop(random.nextInt(nodeCount));
+            }
+            for (int tries = 0; cellCount < targetLength && tries < targetLength * DETOUR_TRIES_PER_CELL; ++tries) {
+                tryDetour(random.nextInt(nodeCount));
+            }
+        }
+
+        private void placeSink() {
+            final var side = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            final int row;
+            final int col;
+            switch (side) {
+                case UP:
+                    row = 0;
+                    col = 1 + random.nextInt(cols - 2);
+                    break;
+                case DOWN:
+                    row = rows - 1;
+                    col = 1 + random.nextInt(cols - 2);
+                    break;
+                case LEFT:
+                    row = 1 + random.nextInt(rows - 2);
+                    col = 0;
+                    break;
+                default:
+                    row = 1 + random.nextInt(rows - 2);
+                    col = cols - 1;
+                    break;
+            }
+            sink = row * cols + col;
+            sinkDir = side;
+        }
+
+        /**
+         * Places the source at about the given distance from the sink, and plans the shortest route between them.
+         */
+        private void placeSource(int distance) {
+            final int entry = neighbour(sink, sinkDir.getOpposite());
+            int bestSource = -1;
+            Direction bestDir = null;
+            int bestError = Integer.MAX_VALUE;
+            for (int i = 0; i < SOURCE_CANDIDATES; ++i) {
+                final int candidate = (1 + random.nextInt(rows - 2)) * cols + 1 + random.nextInt(cols - 2);
+                if (candidate == entry) {
+                    continue;
+                }
+
+                // point the source towards the sink where possible, so the route does not start by turning back
+                final var dirs = new ArrayList<Direction>(4);
+                for (var d : DIRECTIONS) {
+                    final int target = neighbour(candidate, d);
+                    if (isInterior(target) && manhattan(target, entry) < manhattan(candidate, entry)) {
+                        dirs.add(d);
+                    }
+                }
+                if (dirs.isEmpty()) {
+                    continue;
+                }
+
+                final int error = Math.abs(manhattan(candidate, entry) - distance);
+                if (error < bestError) {
+                    bestSource = candidate;
+                    bestDir = dirs.get(random.nextInt(dirs.size()));
+                    bestError = error;
+                }
+            }
+            if (bestSource == -1) {
+                // every candidate was the entry; fall back to its neighbour inside the map
+                bestDir = sinkDir;
+                bestSource = neighbour(entry, sinkDir.getOpposite());
+            }
+            source = bestSource;
+            sourceDir = bestDir;
+            visits[source] = 1;
+            visits[sink] = 1;
+
+            final var traversal = new GridTraversal(rows, cols);
+            final int[] route = new int[rows * cols];
+            final int steps = traversal.shortestPath(neighbour(source, sourceDir), entry,
+                    (idx, dir, to) -> visits[to] == 0, route);
+            if (steps == -1) {
+                throw new IllegalStateException("The source cannot reach the sink");
+            }
+            int last = -1;
+            for (int i = 0; i <= steps; ++i) {
+                last = insertAfter(last, route[i]);
+            }
+        }
+
+        /**
+         * Replaces the step from a visit to the next one with a detour of three steps to a random side.
+         */
+        private void tryDetour(int node) {
+            final int after = next[node];
+            if (after == -1) {
+                return;
+            }
+            final int a = cellOf[node];
+            final int b = cellOf[after];
+            // a cross pipe must keep going straight through
+            if (visits[a] > 1 || visits[b] > 1) {
+                return;
+            }
+
+            final var side = perpendicular(directionBetween(a, b));
+            final int a2 = neighbour(a, side);
+            final int b2 = neighbour(b, side);
+            if (!isFree(a2) || !isFree(b2)) {
+                return;
+            }
+            insertAfter(insertAfter(node, a2), b2);
+        }
+
+        /**
+         * Loops the route back through a visited cell, which becomes a cross.
+         *
+         * <p>
+         * For a straight run {@code x, e, ee} in some direction, the route {@code x, e, ee} becomes
+         * {@code x, e, e+p, x+p, x, x-p, e-p, ee-p, ee} for a side {@code p}.
+         * </p>
+         */
+        private void tryLoop(int node) {
+            final int before = prev[node];
+            final int after = next[node];
+            if (before == -1 || after == -1 || next[after] == -1) {
+                return;
+            }
+            final int x = cellOf[node];
+            final int e = cellOf[after];
+            final int ee = cellOf[next[after]];
+            final var dir = directionBetween(cellOf[before], x);
+            if (visits[x] != 1 || visits[e] != 1 || directionBetween(x, e) != dir || directionBetween(e, ee) != dir) {
+                return;
+            }
+
+            final var side = perpendicular(dir);
+            final var other = side.getOpposite();
+            final int[] loop = {neighbour(e, side), neighbour(x, side), x, neighbour(x, other), neighbour(e, other),
+                    neighbour(ee, other)};
+            for (int cell : loop) {
+                if (cell != x && !isFree(cell)) {
+                    return;
+                }
+            }
+
+            int last = after;
+            for (int cell : loop) {
+                last = insertAfter(last, cell);
+            }
+            ++crossCount;
+        }
+
+        /**
+         * @return Level with the cells of the plan, and a queue of its pipes in order, mixed with decoys.
+         */
+        @NotNull
+        GeneratedLevel toLevel(int delay, @NotNull Difficulty difficulty) {
+            final int[] masks = new int[rows * cols];
+            int turns = 0;
+            for (int node = head; node != -1; node = next[node]) {
+                final int cell = cellOf[node];
+                final var in = prev[node] == -1 ? sourceDir.getOpposite()
+                        : directionBetween(cell, cellOf[prev[node]]);
+                final var out = next[node] == -1 ? sinkDir : directionBetween(cell, cellOf[next[node]]);
+                masks[cell] |= in.mask() | out.mask();
+            }
+
+            placements = new int[cellCount];
+            placementPipes = new int[cellCount];
+            final var pipes = new ArrayList<Pipe>(cellCount * 2);
+            final boolean[] placed = new boolean[rows * cols];
+            int count = 0;
+            for (int node = head; node != -1; node = next[node]) {
+                final int cell = cellOf[node];
+                if (placed[cell]) {
+                    continue;
+                }
+                placed[cell] = true;
+
+                while (random.nextDouble() < difficulty.decoyRate / (1 + difficulty.decoyRate)) {
+                    pipes.add(new Pipe(SHAPES[random.nextInt(SHAPES.length)]));
+                }
+                final var shape = shapeOf(masks[cell]);
+                if (shape != Pipe.Shape.CROSS && shape != Pipe.Shape.HORIZONTAL && shape != Pipe.Shape.VERTICAL) {
+                    ++turns;
+                }
+                placements[count] = cell;
+                placementPipes[count] = pipes.size();
+                pipes.add(new Pipe(shape));
+                ++count;
+            }
+
+            final var cells = new Cell[rows][cols];
+            for (int row = 0; row < rows; ++row) {
+                for (int col = 0; col < cols; ++col) {
+                    final int idx = row * cols + col;
+                    final var coord = new Coordinate(row, col);
+                    if (idx == source) {
+                        cells[row][col] = new TerminationCell(coord, sourceDir, TerminationCell.Type.SOURCE);
+                    } else if (idx == sink) {
+                        cells[row][col] = new TerminationCell(coord, sinkDir, TerminationCell.Type.SINK);
+                    } else if (!isInterior(idx) || (visits[idx] == 0 && random.nextDouble() < difficulty.wallDensity)) {
+                        cells[row][col] = new Wall(coord);
+                    } else {
+                        cells[row][col] = new FillableCell(coord);
+                    }
+                }
+            }
+
+            final var properties = new GameProperties(rows, cols, cells, delay, pipes);
+            return new GeneratedLevel(properties, cellCount, cellCount - shortest, crossCount, turns);
+        }
+
+        /**
+         * Plays the planned solution with the rules of the {@link Solver}.
+         *
+         * @return Whether the planned solution connects the sink before the water spills.
+         */
+        boolean isSolution(@NotNull GeneratedLevel generated) {
+            final var prop = generated.getProperties();
+            final var level = new Level(new Map(prop.rows, prop.cols, prop.cells), prop.delay, Solver.shapesOf(prop));
+            var node = SearchNode.root(level);
+            for (int i = 0; i < placements.length; ++i) {
+                node = node.place(level, placementPipes[i], placements[i]);
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.isWon(level);
+        }
+
+        private int insertAfter(int node, int cell) {
+            if (nodeCount == cellOf.length) {
+                cellOf = Arrays.copyOf(cellOf, nodeCount * 2);
+                next = Arrays.copyOf(next, nodeCount * 2);
+                prev = Arrays.copyOf(prev, nodeCount * 2);
+            }
+
+            final int created = nodeCount++;
+            cellOf[created] = cell;
+            prev[created] = node;
+            if (node == -1) {
+                next[created] = head;
+                head = created;
+            } else {
+                next[created] = next[node];
+                next[node] = created;
+            }
+            if (next[created] != -1) {
+                prev[next[created]] = created;
+            }
+
+            if (visits[cell]++ == 0) {
+                ++cellCount;
+            }
+            return created;
+        }
+
+        private boolean isFree(int idx) {
+            return idx != -1 && visits[idx] == 0;
+        }
+
+        private boolean isInterior(int idx) {
+            if (idx == -1) {
+                return false;
+            }
+            final int row = idx / cols;
+            final int col = idx % cols;
+            return row > 0 && row < rows - 1 && col > 0 && col < cols - 1;
+        }
+
+        private int neighbour(int idx, @NotNull Direction d) {
+            final int row = idx / cols + d.getRowOffset();
+            final int col = idx % cols + d.getColOffset();
+            if (row < 0 || row >= rows || col < 0 || col >= cols) {
+                return -1;
+            }
+            return row * cols + col;
+        }
+
+        private int manhattan(int a, int b) {
+            return Math.abs(a / cols - b / cols) + Math.abs(a % cols - b % cols);
+        }
+
+        @NotNull
+        private Direction directionBetween(int from, int to) {
+            for (var d : DIRECTIONS) {
+                if (neighbour(from, d) == to) {
+                    return d;
+                }
+            }
+            throw new IllegalStateException("The cells are not neighbours");
+        }
+
+        /**
+         * @return One of the two directions perpendicular to {@code d}, at random.
+         */
+        @NotNull
+        private Direction perpendicular(@NotNull Direction d) {
+            return random.nextBoolean() ? d.rotateCW() : d.rotateCW().getOpposite();
+        }
+
+        @NotNull
+        private static Pipe.Shape shapeOf(int mask) {
+            for (var shape : SHAPES) {
+                if (shape.mask() == mask) {
+                    return shape;
+                }
+            }
+            throw new IllegalStateException("No pipe has the openings " + mask);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package models.solver;
+
+import io.GameProperties;
+import models.map.Map;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link Solver} which searches with every worker of a {@link ForkJoinPool}.
+ *
+ * <p>
+ * Most levels are solved or found unsolvable within a few thousand nodes, for which starting tasks costs more than it
+ * saves, so each level is first searched on the calling thread with a budget of
+ * {@link ParallelSolver#SEQUENTIAL_NODES} nodes. Only levels which need more nodes are searched in parallel.
+ * </p>
+ * <p>
+ * The search tree is expanded breadth-first for the first {@link ParallelSolver#splitDepth} placements, and each node
+ * reached is searched by its own task, most promising nodes first. Tasks alternate between two orders, so the pool
+ * runs a portfolio of strategies: half of the tasks expand the nodes with the fewest pipes placed plus still needed,
+ * as {@link Solver} does, and half expand the nodes closest to a sink.
+ * </p>
+ * <p>
+ * All tasks share a lock-free table of the states reached, so a state reached by one task is not searched again by
+ * another, and a budget with a cancellation flag, which the first task to find a solution sets to stop the others.
+ * The solution found may therefore differ between runs.
+ * </p>
+ * <p>
+ * A single instance must not be used by more than one thread at a time.
+ * </p>
+ */
+public class ParallelSolver {
+
+    /**
+     * Default number of placements to expand before splitting the search into tasks.
+     */
+    public static final int DEFAULT_SPLIT_DEPTH = 2;
+
+    /**
+     * Number of nodes to search on the calling thread before splitting the search into tasks.
+     */
+    public static final int SEQUENTIAL_NODES = 4096;
+
+    /**
+     * Number of slots of the state table per node of the budget, as each expanded node adds several states.
+     */
+    private static final int SLOTS_PER_NODE = 8;
+    private static final int MAX_SLOTS = 1 << 24;
+
+    private final int maxNodes;
+    private final long timeLimitNanos;
+    private final int splitDepth;
+    @NotNull
+    private final ForkJoinPool pool;
+    @NotNull
+    private final VisitedTable sequentialVisited = new VisitedTable();
+
+    /**
+     * Creates a solver with the default budget, which runs on the common pool.
+     */
+    public ParallelSolver() {
+        this(Solver.DEFAULT_MAX_NODES, Solver.DEFAULT_TIME_LIMIT_MILLIS, DEFAULT_SPLIT_DEPTH,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param maxNodes        Maximum number of nodes to expand per level, over all tasks.
+     * @param timeLimitMillis Maximum time to search per level, in milliseconds.
+     * @param splitDepth      Number of placements to expand before splitting the search into tasks.
+     * @param pool            Pool to run the tasks on.
+     * @throws IllegalArgumentException if either budget is not positive, or the split depth is negative.
+     */
+    public ParallelSolver(int maxNodes, long timeLimitMillis, int splitDepth, @NotNull ForkJoinPool pool) {
+        if (maxNodes <= 0 || timeLimitMillis <= 0) {
+            throw new IllegalArgumentException("The node and time budgets must be positive");
+        }
+        if (splitDepth < 0) {
+            throw new IllegalArgumentException("The split depth must not be negative");
+        }
+        this.maxNodes = maxNodes;
+        this.timeLimitNanos = timeLimitMillis * 1_000_000;
+        this.splitDepth = splitDepth;
+        this.pool = pool;
+    }
+
+    /**
+     * @see Solver#solve(GameProperties)
+     */
+    @NotNull
+    public Solution solve(@NotNull GameProperties prop) {
+        return solve(new Map(prop.rows, prop.cols, prop.cells), prop.delay, Solver.shapesOf(prop));
+    }
+
+    /**
+     * @see Solver#solve(Map, int, List)
+     */
+    @NotNull
+    public Solution solve(@NotNull Map map, int delay, @NotNull List<Pipe.Shape> shapes) {
+        final long start = System.nanoTime();
+        final var level = new Level(map, delay, shapes);
+
+        final var root = SearchNode.root(level);
+        if (root.isWon(level)) {
+            return new Solution(Solution.Status.SOLVED, List.of(), 0);
+        }
+        if (!Search.isPromising(level, root)) {
+            return new Solution(Solution.Status.NOT_FOUND, List.of(), 0);
+        }
+
+        final var sequentialBudget = new SearchBudget(Math.min(maxNodes, SEQUENTIAL_NODES), timeLimitNanos);
+        sequentialVisited.clear();
+        sequentialVisited.visit(root.hash, root.queuePos);
+        final var sequentialGoal = new Search(level, sequentialVisited, sequentialBudget, Search.SHORTEST_FIRST)
+                .run(root);
+        if (sequentialGoal != null) {
+            return new Solution(Solution.Status.SOLVED, Search.actionsTo(level, sequentialGoal),
+                    sequentialBudget.expanded());
+        }
+        if (!sequentialBudget.isExceeded()) {
+            return new Solution(Solution.Status.NOT_FOUND, List.of(), sequentialBudget.expanded());
+        }
+        if (sequentialBudget.expanded() >= maxNodes) {
+            return new Solution(Solution.Status.BUDGET_EXCEEDED, List.of(), sequentialBudget.expanded());
+        }
+
+        final var budget = new SearchBudget(maxNodes - sequentialBudget.expanded(),
+                timeLimitNanos - (System.nanoTime() - start));
+        final var visited = new ConcurrentStateTable((int) Math.min(MAX_SLOTS, (long) maxNodes * SLOTS_PER_NODE));
+        visited.visit(root.hash, root.queuePos);
+        final var found = new AtomicReference<SearchNode>();
+
+        // expand the first placements on this thread, to find the roots of the tasks
+        List<SearchNode> frontier = List.of(root);
+        for (int depth = 0; depth < splitDepth && found.get() == null; ++depth) {
+            final var next = new ArrayList<SearchNode>();
+            for (var node : frontier) {
+                final boolean expanded = Search.expand(level, node, visited, child -> {
+                    if (child.isWon(level)) {
+                        found.set(child);
+                        return false;
+                    }
+                    next.add(child);
+                    return true;
+                });
+                if (!expanded) {
+                    break;
+                }
+            }
+            budget.charge(frontier.size());
+            frontier = next;
+        }
+
+        if (found.get() == null && !frontier.isEmpty()) {
+            final var roots = new ArrayList<>(frontier);
+            roots.sort(Search.SHORTEST_FIRST);
+
+            final var tasks = new ArrayList<RecursiveAction>(roots.size());
+            for (int i = 0; i < roots.size(); ++i) {
+                final var taskRoot = roots.get(i);
+                final var order = i % 2 == 0 ? Search.SHORTEST_FIRST : Search.CLOSEST_FIRST;
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        final var goal = new Search(level, visited, budget, order).run(taskRoot);
+                        if (goal != null && budget.cancel()) {
+                            found.set(goal);
+                        }
+                    }
+                });
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        final int expanded = sequentialBudget.expanded() + budget.expanded();
+        final var goal = found.get();
+        if (goal != null) {
+            return new Solution(Solution.Status.SOLVED, Search.actionsTo(level, goal), expanded);
+        }
+        final var status = budget.isExceeded() ? Solution.Status.BUDGET_EXCEEDED : Solution.Status.NOT_FOUND;
+        return new Solution(status, List.of(), expanded);
+    }
+}
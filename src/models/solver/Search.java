@@ -0,0 +1,204 @@
+package models.solver;
+
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Best-first search from one node of a level, used by the {@link Solver} and by each worker of the
+ * {@link ParallelSolver}.
+ */
+final class Search {
+
+    /**
+     * Orders nodes by estimated total number of pipes, then by the estimate of the remaining pipes, so that nodes which
+     * are closer to a sink are preferred among equally good nodes, then by the number of pipes taken from the queue.
+     */
+    static final Comparator<SearchNode> SHORTEST_FIRST = Comparator
+            .<SearchNode>comparingInt(n -> n.placed + n.estimate)
+            .thenComparingInt(n -> n.estimate)
+            .thenComparingInt(n -> n.queuePos);
+    /**
+     * Orders nodes by the estimate of the remaining pipes only, which finds a solution sooner on open maps but may
+     * place more pipes than needed.
+     */
+    static final Comparator<SearchNode> CLOSEST_FIRST = Comparator
+            .<SearchNode>comparingInt(n -> n.estimate)
+            .thenComparingInt(n -> n.queuePos);
+
+    private static final Pipe.Shape[] SHAPES = Pipe.Shape.values();
+
+    /**
+     * Receives the children of a node.
+     */
+    @FunctionalInterface
+    interface ChildVisitor {
+
+        /**
+         * @param child A child which is new to the state table, and may still connect every sink.
+         * @return {@code false} to stop expanding the node.
+         */
+        boolean visit(@NotNull SearchNode child);
+    }
+
+    @NotNull
+    private final Level level;
+    @NotNull
+    private final StateTable visited;
+    @NotNull
+    private final SearchBudget budget;
+    @NotNull
+    private final Comparator<SearchNode> order;
+
+    /**
+     * @param level   Level to solve.
+     * @param visited States reached so far, which may be shared with other searches.
+     * @param budget  Budget of the search, which may be shared with other searches.
+     * @param order   Order in which nodes are expanded.
+     */
+    Search(@NotNull Level level, @NotNull StateTable visited, @NotNull SearchBudget budget,
+           @NotNull Comparator<SearchNode> order) {
+        this.level = level;
+        this.visited = visited;
+        this.budget = budget;
+        this.order = order;
+    }
+
+    /**
+     * Searches the subtree of a node until a node which connects every sink is found, the subtree is exhausted, or the
+     * budget is spent.
+     *
+     * @param start Node to start from. It must already be in the state table.
+     * @return A node which connects every sink, or {@code null}.
+     */
+    @Nullable
+    SearchNode run(@NotNull SearchNode start) {
+        if (start.isWon(level)) {
+            return start;
+        }
+        if (!budget.charge(0)) {
+            return null;
+        }
+
+        final var open = new PriorityQueue<>(order);
+        open.add(start);
+        final SearchNode[] goal = new SearchNode[1];
+        final ChildVisitor collect = child -> {
+            if (child.isWon(level)) {
+                goal[0] = child;
+                return false;
+            }
+            open.add(child);
+            return true;
+        };
+
+        int uncharged = 0;
+        while (!open.isEmpty()) {
+            if (uncharged == SearchBudget.BATCH) {
+                uncharged = 0;
+                if (!budget.charge(SearchBudget.BATCH)) {
+                    return null;
+                }
+            }
+
+            ++uncharged;
+            if (!expand(level, open.poll(), visited, collect)) {
+                break;
+            }
+        }
+        budget.charge(uncharged);
+        return goal[0];
+    }
+
+    /**
+     * Visits the children of a node, skipping those which are already in the state table and those which cannot
+     * connect every sink with the remaining pipes.
+     *
+     * @return {@code false} if the visitor stopped the expansion.
+     */
+    static boolean expand(@NotNull Level level, @NotNull SearchNode node, @NotNull StateTable visited,
+                          @NotNull ChildVisitor visitor) {
+        final int firstEnd = node.firstEnd(level);
+        for (var shape : SHAPES) {
+            final int pipe = level.nextOfShape(node.queuePos, shape);
+            if (pipe == -1) {
+                continue;
+            }
+
+            for (int i = firstEnd; i < node.endCount; ++i) {
+                final int idx = node.ends[i] >>> 4;
+                if (!isFirstEnd(node, firstEnd, i) || (shape.mask() & entriesOf(node, firstEnd, idx)) == 0) {
+                    continue;
+                }
+
+                final var child = node.place(level, pipe, idx);
+                if (child == null || !visited.visit(child.hash, child.queuePos)) {
+                    continue;
+                }
+                if (!child.isWon(level) && !isPromising(level, child)) {
+                    continue;
+                }
+                if (!visitor.visit(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the remaining pipes in the queue may be enough to connect every sink.
+     */
+    static boolean isPromising(@NotNull Level level, @NotNull SearchNode node) {
+        return node.estimate <= level.shapes.length - node.queuePos;
+    }
+
+    /**
+     * @return Actions from the root to the node.
+     */
+    @NotNull
+    static List<Action> actionsTo(@NotNull Level level, @NotNull SearchNode goal) {
+        final var actions = new ArrayList<Action>(goal.queuePos);
+        for (var node = goal; node.parent != null; node = node.parent) {
+            final int pipe = node.queuePos - 1;
+            actions.add(Action.place(level.shapes[pipe], node.placedCell / level.cols, node.placedCell % level.cols));
+            for (int skipped = pipe - 1; skipped >= node.parent.queuePos; --skipped) {
+                actions.add(Action.skip(level.shapes[skipped]));
+            }
+        }
+        Collections.reverse(actions);
+        return actions;
+    }
+
+    /**
+     * @return Whether the {@code i}-th end is the first end from {@code firstEnd} onwards in its cell.
+     */
+    private static boolean isFirstEnd(@NotNull SearchNode node, int firstEnd, int i) {
+        final int idx = node.ends[i] >>> 4;
+        for (int j = firstEnd; j < i; ++j) {
+            if (node.ends[j] >>> 4 == idx) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Openings through which a pipe in the cell would connect to the ends from {@code firstEnd} onwards.
+     */
+    private static int entriesOf(@NotNull SearchNode node, int firstEnd, int idx) {
+        int entries = 0;
+        for (int i = firstEnd; i < node.endCount; ++i) {
+            if (node.ends[i] >>> 4 == idx) {
+                entries |= node.ends[i] & 0xF;
+            }
+        }
+        return entries;
+    }
+}
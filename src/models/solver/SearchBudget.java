@@ -0,0 +1,73 @@
+package models.solver;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Node and time budget of a search, which may be shared by several workers.
+ *
+ * <p>
+ * Workers charge their expanded nodes in batches, so the node budget may be exceeded by up to one batch per worker.
+ * Any worker can cancel the search, e.g. once it has found a solution, and the others stop at their next charge.
+ * </p>
+ */
+final class SearchBudget {
+
+    /**
+     * Number of expanded nodes a worker charges at once.
+     */
+    static final int BATCH = 64;
+
+    private final int maxNodes;
+    private final long deadline;
+    private final AtomicInteger expanded = new AtomicInteger();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile boolean exceeded = false;
+
+    /**
+     * @param maxNodes       Maximum number of nodes to expand.
+     * @param timeLimitNanos Maximum time to search, starting now.
+     */
+    SearchBudget(int maxNodes, long timeLimitNanos) {
+        this.maxNodes = maxNodes;
+        this.deadline = System.nanoTime() + timeLimitNanos;
+    }
+
+    /**
+     * @param nodes Number of nodes expanded since the last charge.
+     * @return {@code false} if the search should stop, because it is cancelled or out of budget.
+     */
+    boolean charge(int nodes) {
+        if (cancelled.get()) {
+            return false;
+        }
+        if (expanded.addAndGet(nodes) > maxNodes || System.nanoTime() > deadline) {
+            exceeded = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops every worker at its next charge.
+     *
+     * @return {@code true} if this call cancelled the search, {@code false} if it was already cancelled.
+     */
+    boolean cancel() {
+        return cancelled.compareAndSet(false, true);
+    }
+
+    /**
+     * @return Whether a worker has stopped because the search ran out of nodes or time.
+     */
+    boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * @return Number of nodes charged so far.
+     */
+    int expanded() {
+        return expanded.get();
+    }
+}
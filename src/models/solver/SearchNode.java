@@ -0,0 +1,360 @@
+package models.solver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Direction;
+import util.Zobrist;
+
+import java.util.Arrays;
+
+/**
+ * State of a level after some pipes of the queue have been placed or skipped.
+ *
+ * <p>
+ * A node is never changed once created. Skipping pipes does not change the map, so a child is created by skipping
+ * any number of pipes and placing the next one; the skipped pipes are not nodes of their own.
+ * </p>
+ * <p>
+ * The flow follows the rules of {@link textgame.game.Game}: the water starts flowing after {@link Level#delay} pipes
+ * are placed, and advances by one round every time another pipe is placed. Skipping a pipe does not advance the water.
+ * A round fills every pipe connected to a pipe filled in an earlier round, and the game is lost when a round fills
+ * nothing, unless the placed pipe has connected every sink.
+ * </p>
+ */
+final class SearchNode {
+
+    private static final int HASH_TABLE_SHAPE = 0;
+    private static final int HASH_TABLE_FILLED = 1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * State of every cell, as in {@link Level#encode(models.pipes.Pipe.Shape, boolean)}.
+     */
+    @NotNull
+    final byte[] cells;
+    /**
+     * Empty cells next to an opening of a pipe connected to a source, each packed as {@code idx << 4 | entry}, where
+     * {@code entry} is the opening which a pipe in the cell needs to connect.
+     */
+    @NotNull
+    final int[] ends;
+    final int endCount;
+    /**
+     * Index of the first end opened by the last placed pipe. The ends from this index onwards are the head of the
+     * pipeline.
+     */
+    final int headStart;
+    /**
+     * Cells filled during the last round.
+     */
+    @NotNull
+    final int[] front;
+    final int frontSize;
+
+    /**
+     * Index of the next pipe in {@link Level#shapes}.
+     */
+    final int queuePos;
+    /**
+     * Number of pipes placed so far.
+     */
+    final int placed;
+    final int connectedSinks;
+    /**
+     * Zobrist hash of the pipes and the filled cells.
+     */
+    final long hash;
+    /**
+     * Lower bound of the number of pipes still needed to connect every sink, or {@link Level#UNREACHABLE}.
+     */
+    final int estimate;
+
+    @Nullable
+    final SearchNode parent;
+    /**
+     * Index of the cell which the last pipe was placed into, or {@code -1} for the root.
+     */
+    final int placedCell;
+
+    private SearchNode(@NotNull Level level, @NotNull byte[] cells, @NotNull int[] ends, int endCount, int headStart,
+                       @NotNull int[] front, int frontSize, int queuePos, int placed, int connectedSinks, long hash,
+                       @Nullable SearchNode parent, int placedCell) {
+        this.cells = cells;
+        this.ends = ends;
+        this.endCount = endCount;
+        this.headStart = headStart;
+        this.front = front;
+        this.frontSize = frontSize;
+        this.queuePos = queuePos;
+        this.placed = placed;
+        this.connectedSinks = connectedSinks;
+        this.hash = hash;
+        this.parent = parent;
+        this.placedCell = placedCell;
+        this.estimate = estimate(level);
+    }
+
+    /**
+     * @param level Level to solve.
+     * @return State at the start of the level.
+     */
+    @NotNull
+    static SearchNode root(@NotNull Level level) {
+        final byte[] cells = level.initialCells.clone();
+        final var builder = new EndsBuilder(new int[16], 0);
+        int connectedSinks = 0;
+        for (int i = 0; i < level.sourceTargets.length; ++i) {
+            final int target = level.sourceTargets[i];
+            if (target == -1 || (cells[target] & Level.CONNECTED) != 0) {
+                continue;
+            }
+
+            final int state = cells[target];
+            if ((Level.connections(state) & level.sourceEntries[i]) != 0) {
+                connectedSinks += connect(level, cells, builder, target);
+            } else if ((state & Level.SHAPE_BITS) == 0 && (state & Level.FILLED) == 0) {
+                builder.add(target, level.sourceEntries[i]);
+            }
+        }
+
+        long hash = 0;
+        for (int idx = 0; idx < cells.length; ++idx) {
+            final int shape = cells[idx] & Level.SHAPE_BITS;
+            if (shape != 0) {
+                hash ^= Zobrist.key(HASH_TABLE_SHAPE, idx, shape - 1);
+            }
+            if ((cells[idx] & Level.FILLED) != 0) {
+                hash ^= Zobrist.key(HASH_TABLE_FILLED, idx, 0);
+            }
+        }
+
+        return new SearchNode(level, cells, builder.ends, builder.count, 0, new int[0], 0, 0, 0, connectedSinks, hash,
+                null, -1);
+    }
+
+    /**
+     * @param level Level to solve.
+     * @param pipe  Index of the pipe to place in {@link Level#shapes}. The pipes before it are skipped.
+     * @param idx   Index of an end cell. The pipe must have an opening towards a pipe connected to a source.
+     * @return State after placing the pipe into the cell, or {@code null} if the game is lost afterwards.
+     */
+    @Nullable
+    SearchNode place(@NotNull Level level, int pipe, int idx) {
+        final int shape = level.shapes[pipe].ordinal();
+        final byte[] nextCells = cells.clone();
+        nextCells[idx] = (byte) (shape + 1);
+        long nextHash = hash ^ Zobrist.key(HASH_TABLE_SHAPE, idx, shape);
+
+        final var builder = new EndsBuilder(new int[Math.max(16, endCount + 4)], 0);
+        for (int i = 0; i < endCount; ++i) {
+            if (ends[i] >>> 4 != idx) {
+                builder.add(ends[i] >>> 4, ends[i] & 0xF);
+            }
+        }
+        final int nextHeadStart = builder.count;
+        final int nextConnectedSinks = connectedSinks + connect(level, nextCells, builder, idx);
+        final int nextPlaced = placed + 1;
+        final boolean won = nextConnectedSinks == level.sinkEntries.length;
+
+        int[] nextFront = front;
+        int nextFrontSize = frontSize;
+        final int round = nextPlaced - level.delay;
+        if (round >= 1) {
+            nextFront = new int[Math.max(4, frontSize * 2 + level.sourceTargets.length + 1)];
+            nextFrontSize = 0;
+
+            // The placed pipe is checked against the cells filled before this round, as in FlowFront.
+            if (round > 1 && isConnectedToFilled(level, nextCells, idx)) {
+                nextCells[idx] |= Level.FILLED;
+                nextFront[nextFrontSize++] = idx;
+            }
+            for (int i = 0; i < level.sourceTargets.length; ++i) {
+                final int target = level.sourceTargets[i];
+                if (target != -1 && (nextCells[target] & Level.FILLED) == 0
+                        && (Level.connections(nextCells[target]) & level.sourceEntries[i]) != 0) {
+                    nextCells[target] |= Level.FILLED;
+                    nextFront[nextFrontSize++] = target;
+                }
+            }
+            if (round > 1) {
+                for (int i = 0; i < frontSize; ++i) {
+                    final int from = front[i];
+                    final int mask = Level.connections(nextCells[from]);
+                    for (Direction d : DIRECTIONS) {
+                        if ((mask & d.mask()) == 0) {
+                            continue;
+                        }
+                        final int n = level.neighbour(from, d);
+                        if (n == -1 || level.kinds[n] != Level.KIND_FILLABLE || (nextCells[n] & Level.FILLED) != 0) {
+                            continue;
+                        }
+                        if ((Level.connections(nextCells[n]) & d.getOpposite().mask()) == 0) {
+                            continue;
+                        }
+
+                        nextCells[n] |= Level.FILLED;
+                        if (nextFrontSize == nextFront.length) {
+                            nextFront = Arrays.copyOf(nextFront, nextFront.length * 2);
+                        }
+                        nextFront[nextFrontSize++] = n;
+                    }
+                }
+            }
+
+            if (nextFrontSize == 0 && !won) {
+                return null;
+            }
+            for (int i = 0; i < nextFrontSize; ++i) {
+                nextHash ^= Zobrist.key(HASH_TABLE_FILLED, nextFront[i], 0);
+            }
+        }
+
+        return new SearchNode(level, nextCells, builder.ends, builder.count, nextHeadStart, nextFront, nextFrontSize, pipe + 1,
+                nextPlaced, nextConnectedSinks, nextHash, this, idx);
+    }
+
+    /**
+     * A pipeline which connects a single sink only needs a path from a source, and the pipes of that path are placed
+     * in order, so only the head of the pipeline needs to be extended. Several sinks need the pipeline to branch, so
+     * every end is extended.
+     *
+     * @param level Level to solve.
+     * @return Index of the first end to extend.
+     */
+    int firstEnd(@NotNull Level level) {
+        return level.sinkCells.length == 1 ? headStart : 0;
+    }
+
+    /**
+     * @param level Level to solve.
+     * @return Whether every sink is connected to a source.
+     */
+    boolean isWon(@NotNull Level level) {
+        return connectedSinks == level.sinkEntries.length;
+    }
+
+    /**
+     * Marks the pipe in a cell and every pipe connected to it as connected, and records the ends and sinks they reach.
+     *
+     * @param start Index of a cell with a pipe which is connected to a source.
+     * @return Number of sinks which became connected.
+     */
+    private static int connect(@NotNull Level level, @NotNull byte[] cells, @NotNull EndsBuilder builder, int start) {
+        int sinks = 0;
+        int[] stack = new int[8];
+        int top = 0;
+        cells[start] |= Level.CONNECTED;
+        stack[top++] = start;
+
+        while (top != 0) {
+            final int idx = stack[--top];
+            final int mask = Level.connections(cells[idx]);
+            for (Direction d : DIRECTIONS) {
+                if ((mask & d.mask()) == 0) {
+                    continue;
+                }
+                final int n = level.neighbour(idx, d);
+                if (n == -1) {
+                    continue;
+                }
+
+                final int state = cells[n];
+                final int entry = d.getOpposite().mask();
+                if (level.kinds[n] == Level.KIND_SINK) {
+                    if ((state & Level.CONNECTED) == 0 && isSinkEntry(level, n, d)) {
+                        cells[n] |= Level.CONNECTED;
+                        ++sinks;
+                    }
+                } else if (level.kinds[n] != Level.KIND_FILLABLE || (state & Level.CONNECTED) != 0) {
+                    continue;
+                } else if ((state & Level.SHAPE_BITS) == 0) {
+                    if ((state & Level.FILLED) == 0) {
+                        builder.add(n, entry);
+                    }
+                } else if ((Level.connections(state) & entry) != 0) {
+                    cells[n] |= Level.CONNECTED;
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = n;
+                }
+            }
+        }
+        return sinks;
+    }
+
+    /**
+     * @return Whether the sink at {@code sinkCell} accepts water flowing into it towards {@code d}.
+     */
+    private static boolean isSinkEntry(@NotNull Level level, int sinkCell, @NotNull Direction d) {
+        for (int i = 0; i < level.sinkCells.length; ++i) {
+            if (level.sinkCells[i] == sinkCell && level.sinkOpenings[i] == d.mask()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the pipe in the cell connects to a pipe in a neighbour which is already filled.
+     */
+    private static boolean isConnectedToFilled(@NotNull Level level, @NotNull byte[] cells, int idx) {
+        final int mask = Level.connections(cells[idx]);
+        for (Direction d : DIRECTIONS) {
+            if ((mask & d.mask()) == 0) {
+                continue;
+            }
+            final int n = level.neighbour(idx, d);
+            if (n != -1 && level.kinds[n] == Level.KIND_FILLABLE && (cells[n] & Level.FILLED) != 0
+                    && (Level.connections(cells[n]) & d.getOpposite().mask()) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return For each sink which is not connected, the fewest pipes needed to reach it from any end which is extended;
+     * the largest of these over all sinks.
+     */
+    private int estimate(@NotNull Level level) {
+        int estimate = 0;
+        for (int sink = 0; sink < level.sinkEntries.length; ++sink) {
+            if ((cells[level.sinkCells[sink]] & Level.CONNECTED) != 0) {
+                continue;
+            }
+
+            int nearest = Level.UNREACHABLE;
+            for (int i = firstEnd(level); i < endCount; ++i) {
+                nearest = Math.min(nearest, level.sinkDistance(sink, ends[i] >>> 4));
+            }
+            if (nearest == Level.UNREACHABLE) {
+                return Level.UNREACHABLE;
+            }
+            estimate = Math.max(estimate, nearest);
+        }
+        return estimate;
+    }
+
+    /**
+     * Growable list of ends.
+     */
+    private static final class EndsBuilder {
+
+        @NotNull
+        int[] ends;
+        int count;
+
+        EndsBuilder(@NotNull int[] ends, int count) {
+            this.ends = ends;
+            this.count = count;
+        }
+
+        void add(int idx, int entry) {
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            ends[count++] = idx << 4 | entry;
+        }
+    }
+}
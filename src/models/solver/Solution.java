@@ -0,0 +1,68 @@
+package models.solver;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Result of {@link Solver#solve(models.map.Map, int, List)}.
+ */
+public final class Solution {
+
+    /**
+     * Outcome of a search.
+     */
+    public enum Status {
+        /**
+         * A sequence of actions connecting every sink was found.
+         */
+        SOLVED,
+        /**
+         * Every state reachable by the solver was searched without connecting every sink.
+         */
+        NOT_FOUND,
+        /**
+         * The search stopped because it ran out of nodes or time.
+         */
+        BUDGET_EXCEEDED
+    }
+
+    @NotNull
+    private final Status status;
+    @NotNull
+    private final List<Action> actions;
+    private final int nodesExpanded;
+
+    Solution(@NotNull Status status, @NotNull List<Action> actions, int nodesExpanded) {
+        this.status = status;
+        this.actions = List.copyOf(actions);
+        this.nodesExpanded = nodesExpanded;
+    }
+
+    @NotNull
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Whether a solution was found.
+     */
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * @return Actions to take from the start of the level, in order. Empty unless the level is solved.
+     */
+    @NotNull
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    /**
+     * @return Number of search nodes which were expanded.
+     */
+    public int getNodesExpanded() {
+        return nodesExpanded;
+    }
+}
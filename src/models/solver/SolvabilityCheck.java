@@ -0,0 +1,303 @@
+package models.solver;
+
+import io.GameProperties;
+import models.PipeQueue;
+import models.map.GridTraversal;
+import models.map.cells.FillableCell;
+import models.map.cells.TerminationCell;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import util.Direction;
+import util.GenerationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Checks whether the water of a level can be led from a source to every sink in time, for use before a level is saved.
+ *
+ * <p>
+ * The water starts flowing {@code delay} seconds into the level and then fills one more cell every flow duration, so
+ * the {@code k}-th pipe of a route is filled {@code delay + k * flowDuration} seconds in, and the water spills if the
+ * pipe has not been laid by then. The player is assumed to draw one pipe from the queue every tick of the
+ * {@link models.FlowTimer}, and to lay each pipe which fits an empty cell of the route in the earliest such cell, or
+ * skip it otherwise. The level is rejected if some pipe of the route cannot be drawn before its deadline. Only the
+ * shortest route to each sink is checked, with its own queue.
+ * </p>
+ * <p>
+ * The queue starts with the pipes of the level, followed by pipes generated with a fixed seed, so the same level always
+ * gets the same result. A level may still be solvable with a luckier queue, or by another route.
+ * </p>
+ */
+public final class SolvabilityCheck {
+
+    /**
+     * Seed of the pipes generated after the pipes of the level.
+     */
+    private static final long QUEUE_SEED = 3021;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Result of a check.
+     */
+    public static final class Result {
+
+        private final boolean solvable;
+        @NotNull
+        private final String message;
+
+        private Result(boolean solvable, @NotNull String message) {
+            this.solvable = solvable;
+            this.message = message;
+        }
+
+        /**
+         * @return Whether every sink can be reached in time.
+         */
+        public boolean isSolvable() {
+            return solvable;
+        }
+
+        /**
+         * @return Description of the result, for the player.
+         */
+        @NotNull
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private SolvabilityCheck() {
+    }
+
+    /**
+     * Checks a level, with the pipes after those of the level generated with a fixed seed.
+     *
+     * @param prop         Level to check. Its cells must not be modified during the check.
+     * @param flowDuration Number of seconds between each flow of the water.
+     * @return Result of the check.
+     * @throws IllegalArgumentException if the flow duration is not positive.
+     * @see SolvabilityCheck#check(GameProperties, int, GenerationContext)
+     */
+    @NotNull
+    public static Result check(@NotNull GameProperties prop, int flowDuration) {
+        return check(prop, flowDuration, new GenerationContext(QUEUE_SEED));
+    }
+
+    /**
+     * Checks a level.
+     *
+     * <p>
+     * The check stops with a {@link CancellationException} once the calling thread is interrupted.
+     * </p>
+     *
+     * @param prop         Level to check. Its cells must not be modified during the check.
+     * @param flowDuration Number of seconds between each flow of the water.
+     * @param context      Randomness of the pipes after those of the level.
+     * @return Result of the check.
+     * @throws IllegalArgumentException if the flow duration is not positive.
+     */
+    @NotNull
+    public static Result check(@NotNull GameProperties prop, int flowDuration, @NotNull GenerationContext context) {
+        if (flowDuration <= 0) {
+            throw new IllegalArgumentException("The flow duration must be positive");
+        }
+
+        final var sources = new ArrayList<TerminationCell>();
+        final var sinks = new ArrayList<TerminationCell>();
+        for (int row = 0; row < prop.rows; ++row) {
+            for (int col = 0; col < prop.cols; ++col) {
+                if (!(prop.cells[row][col] instanceof TerminationCell)) {
+                    continue;
+                }
+
+                final var cell = (TerminationCell) prop.cells[row][col];
+                if (cell.type == TerminationCell.Type.SOURCE) {
+                    sources.add(cell);
+                } else {
+                    sinks.add(cell);
+                }
+            }
+        }
+        if (sources.isEmpty() || sinks.isEmpty()) {
+            return new Result(false, "The level needs a source and a sink.");
+        }
+
+        final var traversal = new GridTraversal(prop.rows, prop.cols);
+        final int cols = prop.cols;
+        final GridTraversal.StepFilter filter = (idx, dir, next) -> {
+            checkInterrupted();
+            return prop.cells[next / cols][next % cols] instanceof FillableCell;
+        };
+        final var path = new int[prop.rows * prop.cols];
+
+        int longestRoute = 0;
+        for (var sink : sinks) {
+            final int[] openings = shortestRoute(prop, traversal, sources, sink, filter, path);
+            if (openings == null) {
+                return new Result(false, "A sink cannot be reached from any source through fillable cells.");
+            }
+
+            final int latePipe = firstLatePipe(openings, prop.delay, flowDuration, new PipeQueue(prop.pipes,
+                    context.split()));
+            if (latePipe != -1) {
+                return new Result(false, String.format(
+                        "The water reaches pipe %d of a route after %d seconds, before a pipe which fits it can be "
+                                + "drawn from the queue.",
+                        latePipe, deadline(latePipe, prop.delay, flowDuration)));
+            }
+            longestRoute = Math.max(longestRoute, openings.length);
+        }
+
+        return new Result(true, String.format(
+                "Every sink can be reached in time. The longest route needs %d pipes, which fill in %d seconds.",
+                longestRoute, deadline(longestRoute, prop.delay, flowDuration)));
+    }
+
+    /**
+     * Finds the shortest route of fillable cells from any source to the sink.
+     *
+     * @param path Array which can hold a path through every cell of the level.
+     * @return Openings which each pipe of the route needs, as a bitwise-OR of {@link Direction#mask()}, in the order the
+     * water reaches them, or {@code null} if there is no route.
+     */
+    @Nullable
+    private static int[] shortestRoute(@NotNull GameProperties prop, @NotNull GridTraversal traversal,
+                                       @NotNull List<TerminationCell> sources, @NotNull TerminationCell sink,
+                                       @NotNull GridTraversal.StepFilter filter, @NotNull int[] path) {
+        final int entry = fillableIndex(prop, sink.coord.row - sink.pointingTo.getRowOffset(),
+                sink.coord.col - sink.pointingTo.getColOffset());
+        if (entry == -1) {
+            return null;
+        }
+
+        TerminationCell bestSource = null;
+        int shortest = -1;
+        for (var source : sources) {
+            final int target = fillableIndex(prop, source.coord.row + source.pointingTo.getRowOffset(),
+                    source.coord.col + source.pointingTo.getColOffset());
+            if (target == -1) {
+                continue;
+            }
+
+            final int steps = traversal.shortestPath(target, entry, filter, null);
+            if (steps != -1 && (shortest == -1 || steps < shortest)) {
+                shortest = steps;
+                bestSource = source;
+            }
+        }
+        if (bestSource == null) {
+            return null;
+        }
+
+        final int target = fillableIndex(prop, bestSource.coord.row + bestSource.pointingTo.getRowOffset(),
+                bestSource.coord.col + bestSource.pointingTo.getColOffset());
+        traversal.shortestPath(target, entry, filter, path);
+
+        final var openings = new int[shortest + 1];
+        for (int k = 0; k <= shortest; ++k) {
+            final int in = k == 0 ? bestSource.pointingTo.getOpposite().mask()
+                    : directionBetween(path[k], path[k - 1], prop.cols).mask();
+            final int out = k == shortest ? sink.pointingTo.mask()
+                    : directionBetween(path[k], path[k + 1], prop.cols).mask();
+            openings[k] = in | out;
+        }
+        return openings;
+    }
+
+    /**
+     * Draws pipes from the queue, one every second, and lays each one in the first empty pipe of the route it fits.
+     *
+     * @param openings Openings which each pipe of the route needs, in the order the water reaches them.
+     * @param queue    Queue to draw the pipes from.
+     * @return The first pipe of the route, counting from {@code 1}, which the water reaches before it is laid, or
+     * {@code -1} if there is none.
+     */
+    private static int firstLatePipe(@NotNull int[] openings, int delay, int flowDuration, @NotNull PipeQueue queue) {
+        // positions of the empty pipes of the route, grouped by the openings they need
+        final var pending = new int[1 << DIRECTIONS.length][];
+        final var counts = new int[pending.length];
+        for (int mask : openings) {
+            ++counts[mask];
+        }
+        for (int mask = 0; mask < pending.length; ++mask) {
+            pending[mask] = new int[counts[mask]];
+            counts[mask] = 0;
+        }
+        for (int k = 0; k < openings.length; ++k) {
+            pending[openings[k]][counts[openings[k]]++] = k;
+        }
+        final var next = new int[pending.length];
+
+        int laid = 0;
+        for (long second = 0; laid < openings.length; ++second) {
+            int earliest = Integer.MAX_VALUE;
+            for (int mask = 0; mask < pending.length; ++mask) {
+                if (next[mask] < pending[mask].length) {
+                    earliest = Math.min(earliest, pending[mask][next[mask]]);
+                }
+            }
+            if (second >= deadline(earliest + 1, delay, flowDuration)) {
+                return earliest + 1;
+            }
+            if ((second & 0xFFF) == 0) {
+                checkInterrupted();
+            }
+
+            final int shape = queue.peek().mask();
+            queue.consume();
+            int fits = -1;
+            for (int mask = 0; mask < pending.length; ++mask) {
+                if ((shape & mask) == mask && next[mask] < pending[mask].length
+                        && (fits == -1 || pending[mask][next[mask]] < pending[fits][next[fits]])) {
+                    fits = mask;
+                }
+            }
+            if (fits != -1) {
+                ++next[fits];
+                ++laid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param pipe Pipe of a route, counting from {@code 1}.
+     * @return Number of seconds into the level at which the water fills the pipe.
+     */
+    private static long deadline(int pipe, int delay, int flowDuration) {
+        return delay + (long) pipe * flowDuration;
+    }
+
+    /**
+     * @return Direction of the step from one cell to a neighbouring cell.
+     */
+    @NotNull
+    private static Direction directionBetween(int from, int to, int cols) {
+        final int diff = to - from;
+        for (var d : DIRECTIONS) {
+            if (d.getRowOffset() * cols + d.getColOffset() == diff) {
+                return d;
+            }
+        }
+        throw new IllegalArgumentException("The cells are not neighbours");
+    }
+
+    /**
+     * @return Index of the cell, or {@code -1} if it is outside the map or cannot hold a pipe.
+     */
+    private static int fillableIndex(@NotNull GameProperties prop, int row, int col) {
+        if (row < 0 || row >= prop.rows || col < 0 || col >= prop.cols
+                || !(prop.cells[row][col] instanceof FillableCell)) {
+            return -1;
+        }
+        return row * prop.cols + col;
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+}
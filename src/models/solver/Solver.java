@@ -0,0 +1,166 @@
+package models.solver;
+
+import io.GameProperties;
+import models.PipeQueue;
+import models.map.Map;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds a sequence of {@link Action}s which connects every sink of a level before the water spills.
+ *
+ * <p>
+ * The search is a best-first search over the states reached by placing or skipping the pipes of the queue in order.
+ * States are ordered by the number of pipes placed plus a lower bound of the number of pipes still needed, which is
+ * the shortest route around the walls from the pipeline to the farthest sink. States are simulated with the rules of
+ * {@link textgame.game.Game}, so a state in which the water spills is never expanded. See {@link SearchNode} for
+ * details.
+ * </p>
+ * <p>
+ * Skipping does not change the map, so each step of the search skips to the first pipe of some shape and places it,
+ * and a map which was already reached with fewer pipes taken from the queue is not searched again.
+ * </p>
+ * <p>
+ * Pipes are only placed next to an opening of the pipeline connected to a source, so the pipeline grows outwards from
+ * the sources; with a single sink, only the pipe placed last is extended. A level which can only be solved by placing
+ * a pipe before the pipeline reaches its cell is reported as {@link Solution.Status#NOT_FOUND}.
+ * </p>
+ * <p>
+ * A single instance must not be used by more than one thread at a time.
+ * </p>
+ */
+public class Solver {
+
+    /**
+     * Default maximum number of nodes to expand.
+     */
+    public static final int DEFAULT_MAX_NODES = 200_000;
+    /**
+     * Default maximum time to search, in milliseconds.
+     */
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 1000;
+
+    private final int maxNodes;
+    private final long timeLimitNanos;
+    @NotNull
+    private final StateTable visited;
+
+    /**
+     * Creates a solver with the default budget.
+     */
+    public Solver() {
+        this(DEFAULT_MAX_NODES, DEFAULT_TIME_LIMIT_MILLIS);
+    }
+
+    /**
+     * @param maxNodes        Maximum number of nodes to expand per level.
+     * @param timeLimitMillis Maximum time to search per level, in milliseconds.
+     * @throws IllegalArgumentException if either budget is not positive.
+     */
+    public Solver(int maxNodes, long timeLimitMillis) {
+        this(maxNodes, timeLimitMillis, new VisitedTable());
+    }
+
+    /**
+     * Creates a solver which records the states reached in an off-heap {@link TranspositionTable} of a fixed size,
+     * instead of a table which grows with the search. Once the table is full, states may be searched more than once.
+     *
+     * @param maxNodes        Maximum number of nodes to expand per level.
+     * @param timeLimitMillis Maximum time to search per level, in milliseconds.
+     * @param tableMegabytes  Size of the table of states, in megabytes.
+     * @throws IllegalArgumentException if either budget is not positive, or the table size is out of range.
+     */
+    public Solver(int maxNodes, long timeLimitMillis, int tableMegabytes) {
+        this(maxNodes, timeLimitMillis, new TranspositionTable(tableMegabytes));
+    }
+
+    private Solver(int maxNodes, long timeLimitMillis, @NotNull StateTable visited) {
+        if (maxNodes <= 0 || timeLimitMillis <= 0) {
+            throw new IllegalArgumentException("The node and time budgets must be positive");
+        }
+        this.maxNodes = maxNodes;
+        this.timeLimitNanos = timeLimitMillis * 1_000_000;
+        this.visited = visited;
+    }
+
+    /**
+     * Solves a level loaded from a map file.
+     *
+     * @param prop Properties of the level. The pipes of the level are used as the queue.
+     * @return Result of the search.
+     * @throws IllegalArgumentException if the level does not specify its pipes.
+     */
+    @NotNull
+    public Solution solve(@NotNull GameProperties prop) {
+        return solve(new Map(prop.rows, prop.cols, prop.cells), prop.delay, shapesOf(prop));
+    }
+
+    /**
+     * Solves a level.
+     *
+     * @param map    Map at the start of the level. It is only read.
+     * @param delay  Number of pipes placed before the water starts flowing.
+     * @param shapes Shapes of the pipes, in the order they are drawn from the queue. The search fails once they run out.
+     * @return Result of the search.
+     */
+    @NotNull
+    public Solution solve(@NotNull Map map, int delay, @NotNull List<Pipe.Shape> shapes) {
+        final var budget = new SearchBudget(maxNodes, timeLimitNanos);
+        final var level = new Level(map, delay, shapes);
+
+        final var root = SearchNode.root(level);
+        if (root.isWon(level)) {
+            return new Solution(Solution.Status.SOLVED, List.of(), 0);
+        }
+        if (!Search.isPromising(level, root)) {
+            return new Solution(Solution.Status.NOT_FOUND, List.of(), 0);
+        }
+
+        visited.clear();
+        visited.visit(root.hash, root.queuePos);
+        final var goal = new Search(level, visited, budget, Search.SHORTEST_FIRST).run(root);
+        if (goal != null) {
+            return new Solution(Solution.Status.SOLVED, Search.actionsTo(level, goal), budget.expanded());
+        }
+        final var status = budget.isExceeded() ? Solution.Status.BUDGET_EXCEEDED : Solution.Status.NOT_FOUND;
+        return new Solution(status, List.of(), budget.expanded());
+    }
+
+    /**
+     * @param prop Properties of a level.
+     * @return Shapes of the pipes of the level.
+     * @throws IllegalArgumentException if the level does not specify its pipes.
+     */
+    @NotNull
+    static List<Pipe.Shape> shapesOf(@NotNull GameProperties prop) {
+        if (prop.pipes == null) {
+            throw new IllegalArgumentException("The level does not specify its pipes");
+        }
+
+        final var shapes = new ArrayList<Pipe.Shape>(prop.pipes.size());
+        for (var pipe : prop.pipes) {
+            shapes.add(pipe.getShape());
+        }
+        return shapes;
+    }
+
+    /**
+     * Draws pipes from a queue, for solving a level whose pipes are not specified in its map file.
+     *
+     * @param queue Queue to draw from. The drawn pipes are consumed.
+     * @param count Number of pipes to draw.
+     * @return Shapes of the drawn pipes, in order.
+     */
+    @NotNull
+    public static List<Pipe.Shape> drawShapes(@NotNull PipeQueue queue, int count) {
+        final var shapes = new ArrayList<Pipe.Shape>(count);
+        for (int i = 0; i < count; ++i) {
+            shapes.add(queue.peek());
+            queue.consume();
+        }
+        return shapes;
+    }
+}
@@ -0,0 +1,87 @@
+package models.solver;
+
+import io.Deserializer;
+import io.GameProperties;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the {@link ParallelSolver} against the single-threaded {@link Solver} on a directory of map files.
+ *
+ * <p>
+ * Every map is solved a number of times by each solver after a warm-up, and the average time of each solver and the
+ * speedup of the parallel solver are printed. Maps which do not specify their pipes are skipped.
+ * </p>
+ */
+public class SolverBenchmark {
+
+    private static final String DEFAULT_DIRECTORY = "resources/maps";
+    private static final int DEFAULT_REPETITIONS = 20;
+
+    /**
+     * @param args Optional directory of map files, and optional number of repetitions per map.
+     */
+    public static void main(String[] args) {
+        final var directory = new File(args.length > 0 ? args[0] : DEFAULT_DIRECTORY);
+        final int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REPETITIONS;
+
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".map"));
+        if (files == null || files.length == 0) {
+            System.err.println("No map files in " + directory);
+            System.exit(1);
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        final var solver = new Solver();
+        final var parallelSolver = new ParallelSolver();
+        System.out.println("Workers: " + ForkJoinPool.commonPool().getParallelism());
+
+        long totalSingle = 0;
+        long totalParallel = 0;
+        for (var file : files) {
+            final GameProperties prop;
+            try {
+                prop = new Deserializer(file.toPath()).parseGameFile();
+            } catch (FileNotFoundException e) {
+                System.err.println("Cannot read " + file);
+                continue;
+            }
+            if (prop.pipes == null) {
+                System.out.println(file.getName() + ": skipped, no pipes specified");
+                continue;
+            }
+
+            final var status = solver.solve(prop).getStatus();
+            final var parallelStatus = parallelSolver.solve(prop).getStatus();
+
+            final long single = timeSolver(() -> solver.solve(prop), repetitions);
+            final long parallel = timeSolver(() -> parallelSolver.solve(prop), repetitions);
+            totalSingle += single;
+            totalParallel += parallel;
+
+            System.out.printf("%s: %s / %s, single %.3f ms, parallel %.3f ms, speedup %.2fx%n", file.getName(),
+                    status, parallelStatus, single / 1e6, parallel / 1e6, (double) single / Math.max(1, parallel));
+        }
+        System.out.printf("Total: single %.3f ms, parallel %.3f ms, speedup %.2fx%n",
+                totalSingle / 1e6, totalParallel / 1e6, (double) totalSingle / Math.max(1, totalParallel));
+    }
+
+    /**
+     * @return Average time of one run in nanoseconds, after as many warm-up runs.
+     */
+    private static long timeSolver(Runnable run, int repetitions) {
+        for (int i = 0; i < repetitions; ++i) {
+            run.run();
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < repetitions; ++i) {
+            run.run();
+        }
+        return (System.nanoTime() - start) / repetitions;
+    }
+}
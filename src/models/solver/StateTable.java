@@ -0,0 +1,32 @@
+package models.solver;
+
+/**
+ * Table of the states reached by a search, keyed by the hash of the map and holding the earliest queue position at
+ * which each map was reached.
+ *
+ * <p>
+ * Skipping a pipe does not change the map, so a map reached at an earlier queue position can reach every state which
+ * the same map at a later position can. Such later states are rejected.
+ * </p>
+ */
+interface StateTable {
+
+    /**
+     * Records a state, unless the same map was already reached at the same or an earlier queue position.
+     *
+     * <p>
+     * A table may forget states, e.g. when it is full, in which case a state may be reported as new more than once.
+     * This only costs search time.
+     * </p>
+     *
+     * @param hash     Hash of the map.
+     * @param queuePos Queue position of the state.
+     * @return {@code true} if the state is new.
+     */
+    boolean visit(long hash, int queuePos);
+
+    /**
+     * Removes all states.
+     */
+    void clear();
+}
@@ -0,0 +1,198 @@
+package models.solver;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap open-addressing table of board states, keyed by a 64-bit hash of the board.
+ *
+ * <p>
+ * The table is a direct {@link ByteBuffer} of fixed-size slots, allocated once, so storing millions of states neither
+ * boxes nor adds work for the garbage collector. Each slot holds the hash, an {@code int} value and a depth, and slots
+ * are grouped in buckets of {@link TranspositionTable#BUCKET_SLOTS} sharing one cache line. A hash is only looked up in
+ * its own bucket. When the bucket is full, the entry with the lowest depth is replaced, where each search started
+ * since an entry was stored counts as {@link TranspositionTable#AGE_WEIGHT} levels less depth, so entries of earlier
+ * searches make room first.
+ * </p>
+ * <p>
+ * Entries survive {@link TranspositionTable#newSearch()}, for searching the same board again, but not
+ * {@link TranspositionTable#clear()}, which is usually constant-time.
+ * </p>
+ * <p>
+ * A single instance must not be used by more than one thread at a time.
+ * </p>
+ */
+public final class TranspositionTable implements StateTable {
+
+    /**
+     * Value returned by {@link TranspositionTable#get(long)} for a hash which is not in the table.
+     */
+    public static final int MISSING = Integer.MIN_VALUE;
+    /**
+     * Maximum size of a table, in megabytes.
+     */
+    public static final int MAX_MEGABYTES = 1024;
+    /**
+     * Maximum depth of an entry. Greater depths are stored as this.
+     */
+    public static final int MAX_DEPTH = 0xFFFF;
+
+    private static final int SLOT_BYTES = 16;
+    private static final int BUCKET_SLOTS = 4;
+    private static final int BUCKET_BYTES = SLOT_BYTES * BUCKET_SLOTS;
+    private static final int AGE_WEIGHT = 8;
+
+    // layout of a slot
+    private static final int KEY = 0;
+    private static final int VALUE = 8;
+    private static final int DEPTH = 12;
+    private static final int AGE = 14;
+    private static final int EPOCH = 15;
+
+    @NotNull
+    private final ByteBuffer slots;
+    private final int bucketMask;
+    /**
+     * Tag of the entries stored since the last clear. Slots with any other tag are empty; {@code 0} marks a slot which
+     * was never written.
+     */
+    private byte epoch = 1;
+    private byte age = 0;
+
+    /**
+     * @param megabytes Size of the table. Rounded down to a power of two.
+     * @throws IllegalArgumentException if the size is not between 1 and {@link TranspositionTable#MAX_MEGABYTES}.
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1 || megabytes > MAX_MEGABYTES) {
+            throw new IllegalArgumentException("The table size must be between 1 and " + MAX_MEGABYTES + " MB");
+        }
+
+        final int buckets = Integer.highestOneBit(megabytes) * ((1 << 20) / BUCKET_BYTES);
+        slots = ByteBuffer.allocateDirect(buckets * BUCKET_BYTES).order(ByteOrder.nativeOrder());
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * @return Number of entries the table can hold.
+     */
+    public int capacity() {
+        return (bucketMask + 1) * BUCKET_SLOTS;
+    }
+
+    /**
+     * @param hash Hash of a board.
+     * @return Value stored for the board, or {@link TranspositionTable#MISSING}.
+     */
+    public int get(long hash) {
+        final int slot = find(hash);
+        return slot == -1 ? MISSING : slots.getInt(slot + VALUE);
+    }
+
+    /**
+     * Stores a value for a board, replacing the entry of the board or, if the bucket of the board is full, the least
+     * valuable entry of the bucket.
+     *
+     * @param hash  Hash of a board.
+     * @param value Value to store.
+     * @param depth Importance of the entry, e.g. the size of the subtree searched below the board. Clamped to
+     *              {@code 0} to {@link TranspositionTable#MAX_DEPTH}.
+     */
+    public void put(long hash, int value, int depth) {
+        int slot = find(hash);
+        if (slot == -1) {
+            slot = victim(hash);
+        }
+        write(slot, hash, value, depth);
+    }
+
+    /**
+     * Records a state, keeping the earliest queue position of each board. States reached earlier in the queue can
+     * reach more of the search tree, so they are kept over those reached later.
+     */
+    @Override
+    public boolean visit(long hash, int queuePos) {
+        int slot = find(hash);
+        if (slot != -1) {
+            if (queuePos >= slots.getInt(slot + VALUE)) {
+                return false;
+            }
+        } else {
+            slot = victim(hash);
+        }
+        write(slot, hash, queuePos, MAX_DEPTH - queuePos);
+        return true;
+    }
+
+    /**
+     * Starts a new search of the same boards. Entries are kept, but are replaced before those stored afterwards.
+     */
+    public void newSearch() {
+        ++age;
+    }
+
+    /**
+     * Removes all entries. The table is only wiped once every 255 clears.
+     */
+    @Override
+    public void clear() {
+        if (++epoch == 0) {
+            for (int i = 0; i < slots.capacity(); i += Long.BYTES) {
+                slots.putLong(i, 0);
+            }
+            epoch = 1;
+        }
+        age = 0;
+    }
+
+    /**
+     * @return Offset of the slot holding the hash, or {@code -1}.
+     */
+    private int find(long hash) {
+        final int bucket = bucketOf(hash);
+        for (int i = 0; i < BUCKET_SLOTS; ++i) {
+            final int slot = bucket + i * SLOT_BYTES;
+            if (slots.get(slot + EPOCH) == epoch && slots.getLong(slot + KEY) == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Offset of an empty slot in the bucket of the hash, or else of the slot with the least depth after aging.
+     */
+    private int victim(long hash) {
+        final int bucket = bucketOf(hash);
+        int victim = bucket;
+        int victimScore = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET_SLOTS; ++i) {
+            final int slot = bucket + i * SLOT_BYTES;
+            if (slots.get(slot + EPOCH) != epoch) {
+                return slot;
+            }
+
+            final int elapsed = (age - slots.get(slot + AGE)) & 0xFF;
+            final int score = Short.toUnsignedInt(slots.getShort(slot + DEPTH)) - AGE_WEIGHT * elapsed;
+            if (score < victimScore) {
+                victim = slot;
+                victimScore = score;
+            }
+        }
+        return victim;
+    }
+
+    private void write(int slot, long hash, int value, int depth) {
+        slots.putLong(slot + KEY, hash);
+        slots.putInt(slot + VALUE, value);
+        slots.putShort(slot + DEPTH, (short) Math.max(0, Math.min(MAX_DEPTH, depth)));
+        slots.put(slot + AGE, age);
+        slots.put(slot + EPOCH, epoch);
+    }
+
+    private int bucketOf(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & bucketMask) * BUCKET_BYTES;
+    }
+}
@@ -0,0 +1,93 @@
+package models.solver;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Single-threaded open-addressing {@link StateTable}, which grows as needed and never forgets a state.
+ *
+ * <p>
+ * Hashes and positions are stored in primitive arrays, so visiting a state does not allocate. The hash {@code 0} is
+ * used to mark empty slots, and is stored separately.
+ * </p>
+ */
+final class VisitedTable implements StateTable {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    @NotNull
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    @NotNull
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private int zeroPosition = Integer.MAX_VALUE;
+
+    @Override
+    public boolean visit(long hash, int queuePos) {
+        if (hash == 0) {
+            if (queuePos >= zeroPosition) {
+                return false;
+            }
+            zeroPosition = queuePos;
+            return true;
+        }
+
+        if ((size + 1) * 2 > hashes.length) {
+            grow();
+        }
+
+        final int mask = hashes.length - 1;
+        int i = slotOf(hash, mask);
+        while (hashes[i] != 0) {
+            if (hashes[i] == hash) {
+                if (queuePos >= positions[i]) {
+                    return false;
+                }
+                positions[i] = queuePos;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+
+        hashes[i] = hash;
+        positions[i] = queuePos;
+        ++size;
+        return true;
+    }
+
+    /**
+     * Removes all states, keeping the allocated capacity.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(hashes, 0);
+        size = 0;
+        zeroPosition = Integer.MAX_VALUE;
+    }
+
+    private void grow() {
+        final var oldHashes = hashes;
+        final var oldPositions = positions;
+        hashes = new long[oldHashes.length * 2];
+        positions = new int[oldHashes.length * 2];
+
+        final int mask = hashes.length - 1;
+        for (int j = 0; j < oldHashes.length; ++j) {
+            if (oldHashes[j] == 0) {
+                continue;
+            }
+
+            int i = slotOf(oldHashes[j], mask);
+            while (hashes[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = oldHashes[j];
+            positions[i] = oldPositions[j];
+        }
+    }
+
+    private static int slotOf(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,215 @@
+package textgame;
+
+import io.GameProperties;
+import io.Serializer;
+import models.solver.LevelGenerator;
+import models.solver.Solution;
+import models.solver.Solver;
+import org.jetbrains.annotations.NotNull;
+import util.GenerationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Headless generator of level packs, which writes a directory of map files and a manifest of the levels.
+ *
+ * <p>
+ * Each level is generated by a {@link LevelGenerator} seeded with its own seed, and validated by a {@link Solver},
+ * whose number of expanded nodes is recorded as the difficulty score of the level. Levels which the solver proves
+ * unsolvable are generated again from a new seed. Levels are generated, validated and written by tasks on the common
+ * {@link ForkJoinPool}, and only a few tasks per worker are in flight at a time, so the memory used does not grow with
+ * the size of the pack. The manifest is written in the order of the levels, as their tasks complete.
+ * </p>
+ * <p>
+ * The seeds of the levels are drawn from a single seed, so the same arguments produce the same pack. A level is
+ * reproduced from the seed in its manifest entry by generating a single level from it.
+ * </p>
+ */
+public class LevelPackGenerator {
+
+    private static final String MANIFEST = "manifest.csv";
+    private static final String MANIFEST_HEADER = "file,seed,pathLength,detours,crosses,turns,status,score";
+
+    private static final int DEFAULT_SIZE = 8;
+    private static final int DEFAULT_DELAY = 10;
+    /**
+     * Number of tasks in flight per worker, so workers do not wait for the manifest to be written.
+     */
+    private static final int TASKS_PER_WORKER = 4;
+    private static final int ATTEMPTS = 8;
+    private static final int SOLVER_MAX_NODES = Solver.DEFAULT_MAX_NODES;
+    private static final long SOLVER_TIME_LIMIT_MILLIS = 10_000;
+    private static final int SOLVER_TABLE_MEGABYTES = 16;
+
+    /**
+     * Solver of each worker. Each uses a table of a fixed size, so the memory of validation is bounded by the number
+     * of workers.
+     */
+    private static final ThreadLocal<Solver> SOLVERS = ThreadLocal.withInitial(
+            () -> new Solver(SOLVER_MAX_NODES, SOLVER_TIME_LIMIT_MILLIS, SOLVER_TABLE_MEGABYTES));
+
+    @NotNull
+    private final Path directory;
+    private final int rows;
+    private final int cols;
+    @NotNull
+    private final LevelGenerator.Difficulty difficulty;
+
+    /**
+     * @param directory  Directory to write the pack to. Created if it does not exist.
+     * @param rows       Number of rows of each level (excluding side walls).
+     * @param cols       Number of columns of each level (excluding side walls).
+     * @param difficulty Targets of each level.
+     * @throws IllegalArgumentException if the map is smaller than 2x2.
+     */
+    public LevelPackGenerator(@NotNull Path directory, int rows, int cols,
+                              @NotNull LevelGenerator.Difficulty difficulty) {
+        if (rows < 2 || cols < 2) {
+            throw new IllegalArgumentException("The map must be at least 2x2");
+        }
+        this.directory = directory;
+        this.rows = rows;
+        this.cols = cols;
+        this.difficulty = difficulty;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 6 || args[0].equals("--help")) {
+            System.out.println("Usage: java textgame.LevelPackGenerator [directory] [count]");
+            System.out.println("Usage: java textgame.LevelPackGenerator [directory] [count] [rows] [cols]");
+            System.out.println("Usage: java textgame.LevelPackGenerator [directory] [count] [rows] [cols] "
+                    + "[easy|normal|hard] [seed]");
+            System.exit(args.length == 1 && args[0].equals("--help") ? 0 : 1);
+        }
+
+        try {
+            final int count = Integer.parseInt(args[1]);
+            final int rows = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SIZE;
+            final int cols = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SIZE;
+            final var difficulty = parseDifficulty(args.length > 4 ? args[4] : "normal");
+            final var context = args.length > 5 ? new GenerationContext(Long.parseLong(args[5]))
+                    : new GenerationContext();
+
+            final long start = System.nanoTime();
+            new LevelPackGenerator(Paths.get(args[0]), rows, cols, difficulty).generate(count, context);
+            System.out.printf("Generated %d levels with seed %d in %.1f s%n", count, context.getSeed(),
+                    (System.nanoTime() - start) / 1e9);
+        } catch (final Throwable tr) {
+            tr.printStackTrace();
+            System.err.println("Unable to generate level pack: " + tr.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates a pack.
+     *
+     * @param count   Number of levels.
+     * @param context Source of the seeds of the levels.
+     * @throws IllegalArgumentException if the count is negative.
+     * @throws IOException              if the pack cannot be written.
+     */
+    public void generate(int count, @NotNull GenerationContext context) throws IOException {
+        if (count < 0) {
+            throw new IllegalArgumentException("The number of levels must not be negative");
+        }
+        Files.createDirectories(directory);
+
+        final var pool = ForkJoinPool.commonPool();
+        final int window = pool.getParallelism() * TASKS_PER_WORKER;
+        final var nameFormat = "level-%0" + Integer.toString(Math.max(1, count - 1)).length() + "d.map";
+        final var inFlight = new ArrayDeque<ForkJoinTask<String>>(window);
+
+        try (var manifest = Files.newBufferedWriter(directory.resolve(MANIFEST))) {
+            manifest.write(MANIFEST_HEADER);
+            manifest.newLine();
+
+            for (int i = 0; i < count || !inFlight.isEmpty(); ) {
+                if (i < count && inFlight.size() < window) {
+                    final var fileName = String.format(nameFormat, i);
+                    final long seed = context.split().getSeed();
+                    inFlight.add(pool.submit(() -> generateLevel(fileName, seed)));
+                    ++i;
+                    continue;
+                }
+
+                manifest.write(join(inFlight.remove()));
+                manifest.newLine();
+            }
+        } finally {
+            inFlight.forEach(task -> task.cancel(true));
+        }
+    }
+
+    /**
+     * Generates, validates and writes a level.
+     *
+     * @return Manifest entry of the level.
+     */
+    @NotNull
+    private String generateLevel(@NotNull String fileName, long seed) {
+        final var seeds = new SplittableRandom(seed);
+        long levelSeed = seed;
+        for (int attempt = 1; attempt <= ATTEMPTS; ++attempt, levelSeed = seeds.nextLong()) {
+            final LevelGenerator.GeneratedLevel level;
+            try {
+                level = new LevelGenerator(new SplittableRandom(levelSeed))
+                        .generate(rows + 2, cols + 2, DEFAULT_DELAY, difficulty);
+            } catch (IllegalStateException e) {
+                continue;
+            }
+
+            final GameProperties prop = level.getProperties();
+            final Solution solution = SOLVERS.get().solve(prop);
+            if (solution.getStatus() == Solution.Status.NOT_FOUND) {
+                continue;
+            }
+
+            try {
+                new Serializer(directory.resolve(fileName)).serializeGameProp(prop);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return String.join(",", fileName, Long.toString(levelSeed), Integer.toString(level.getPathLength()),
+                    Integer.toString(level.getDetours()), Integer.toString(level.getCrosses()),
+                    Integer.toString(level.getTurns()), solution.getStatus().name(),
+                    Integer.toString(solution.getNodesExpanded()));
+        }
+        throw new IllegalStateException("Unable to generate a valid level from seed " + seed);
+    }
+
+    /**
+     * @return Manifest entry computed by the task.
+     * @throws IOException if the task failed to write its level.
+     */
+    @NotNull
+    private static String join(@NotNull ForkJoinTask<String> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @NotNull
+    private static LevelGenerator.Difficulty parseDifficulty(@NotNull String name) {
+        switch (name.toLowerCase()) {
+            case "easy":
+                return LevelGenerator.Difficulty.EASY;
+            case "normal":
+                return LevelGenerator.Difficulty.NORMAL;
+            case "hard":
+                return LevelGenerator.Difficulty.HARD;
+            default:
+                throw new IllegalArgumentException("Unknown difficulty: " + name);
+        }
+    }
+}
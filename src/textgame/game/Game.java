@@ -5,11 +5,9 @@ import models.CellStack;
 import models.PipeQueue;
 import models.map.Map;
 import models.map.cells.Cell;
-import models.map.cells.FillableCell;
 import models.pipes.Pipe;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import util.Coordinate;
 
 import java.util.List;
 
@@ -81,7 +79,7 @@ public class Game {
      * Places a pipe at (row, col).
      *
      * <p>
-     * This method should convert the row and column into {@link Coordinate} and try to place the pipe on the map. If
+     * This method should convert the column character into a column number and try to place the pipe on the map. If
      * this succeeds, also update the pipe queue, delay bar, cell stack, and the number of steps.
      * </p>
      *
@@ -90,14 +88,14 @@ public class Game {
      * @return {@code true} if the pipe is placed.
      */
     public boolean placePipe(int row, char col) {
-        Pipe p = pipeQueue.peek();
+        Pipe.Shape shape = pipeQueue.peek();
 
-        var coord = new Coordinate(row, col - 'A' + 1);
-        var result = map.tryPlacePipe(coord, p);
+        var mapCol = col - 'A' + 1;
+        var result = map.tryPlacePipe(row, mapCol, shape);
         if (result) {
             pipeQueue.consume();
             delayBar.countdown();
-            cellStack.push(new FillableCell(coord, p));
+            cellStack.push(map.indexOf(row, mapCol), shape);
 
             ++numOfSteps;
         }
@@ -125,14 +123,15 @@ public class Game {
      * @return {@code false} if there are no steps to undo, otherwise {@code true}.
      */
     public boolean undoStep() {
-        var undoCell = cellStack.pop();
-        if (undoCell != null) {
-            if (undoCell.getPipe().map(Pipe::getFilled).orElse(false)) {
-                cellStack.push(undoCell);
+        var undoEntry = cellStack.pop();
+        if (undoEntry != CellStack.EMPTY) {
+            var idx = CellStack.cellIndexOf(undoEntry);
+            if (map.isFilled(idx)) {
+                cellStack.push(undoEntry);
                 return false;
             }
-            pipeQueue.undo(undoCell.getPipe().orElseThrow());
-            map.undo(undoCell.coord);
+            pipeQueue.undo(CellStack.shapeOf(undoEntry));
+            map.undo(idx);
 
             ++numOfSteps;
 
@@ -47,6 +47,47 @@ public enum Direction {
         }
     }
 
+    /**
+     * @return A single bit identifying {@code this} direction, for use in connection masks.
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @return Row component of {@link Direction#getOffset()}, without allocating a {@link Coordinate}.
+     */
+    public int getRowOffset() {
+        switch (this) {
+            case UP:
+                return -1;
+            case DOWN:
+                return 1;
+            case LEFT:
+            case RIGHT:
+                return 0;
+            default:
+                throw new IllegalStateException("Unknown direction");
+        }
+    }
+
+    /**
+     * @return Column component of {@link Direction#getOffset()}, without allocating a {@link Coordinate}.
+     */
+    public int getColOffset() {
+        switch (this) {
+            case LEFT:
+                return -1;
+            case RIGHT:
+                return 1;
+            case UP:
+            case DOWN:
+                return 0;
+            default:
+                throw new IllegalStateException("Unknown direction");
+        }
+    }
+
     /**
      * @return {@code this} rotated clockwise by 90 degrees.
      */
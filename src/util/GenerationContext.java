@@ -0,0 +1,72 @@
+package util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.SplittableRandom;
+
+/**
+ * Source of randomness for generating a game, created from a single seed.
+ *
+ * <p>
+ * Everything random in a game, such as the map and the pipe queue, draws from a context or from a context split off
+ * it, so the same seed reproduces the same game. Each part of a game should use its own {@link #split()}, so that
+ * changing how many numbers one part draws does not change the others.
+ * </p>
+ * <p>
+ * A context must not be used by more than one thread at a time.
+ * </p>
+ */
+public final class GenerationContext {
+
+    private final long seed;
+    @NotNull
+    private final SplittableRandom random;
+
+    /**
+     * Creates a context with a random seed.
+     */
+    public GenerationContext() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @param seed Seed of the context.
+     */
+    public GenerationContext(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @return Seed which reproduces this context.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Creates an independent context, whose seed is drawn from this context.
+     *
+     * @return A new context.
+     */
+    @NotNull
+    public GenerationContext split() {
+        return new GenerationContext(random.nextLong());
+    }
+
+    /**
+     * @param bound Upper bound, exclusive. Must be positive.
+     * @return A random number from {@code 0} to {@code bound - 1}.
+     */
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    /**
+     * @return The generator of this context, for APIs which take a {@link SplittableRandom}.
+     */
+    @NotNull
+    public SplittableRandom getRandom() {
+        return random;
+    }
+}
@@ -0,0 +1,37 @@
+package util;
+
+/**
+ * Keys for Zobrist hashing.
+ *
+ * <p>
+ * The hash of a state is the XOR of one key per (table, position, value) present in the state, so it can be updated
+ * in constant time by XOR-ing the keys which are added or removed. Keys are derived from their arguments instead of
+ * being stored, so they are the same across runs and do not take memory proportional to the size of the state.
+ * </p>
+ */
+public final class Zobrist {
+
+    private Zobrist() {
+        // You don't need to instantiate this class to use it!
+    }
+
+    /**
+     * @param table    Identifier of the table, which separates keys of different kinds of values.
+     * @param position Position of the value in the state, e.g. the index of a cell.
+     * @param value    Value at the position, e.g. the ordinal of a pipe shape.
+     * @return Key of the value at the position.
+     */
+    public static long key(int table, int position, int value) {
+        return mix(((long) table << 56) ^ ((long) position << 8) ^ value);
+    }
+
+    /**
+     * SplitMix64 finalizer, which maps distinct inputs to well-distributed outputs.
+     */
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
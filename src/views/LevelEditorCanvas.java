@@ -5,17 +5,20 @@ import io.Deserializer;
 import io.GameProperties;
 import io.Serializer;
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import models.FlowTimer;
 import models.exceptions.InvalidMapException;
 import models.map.cells.Cell;
 import models.map.cells.FillableCell;
 import models.map.cells.TerminationCell;
 import models.map.cells.Wall;
+import models.solver.SolvabilityCheck;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import util.Coordinate;
@@ -27,6 +30,8 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static models.Config.TILE_SIZE;
 
@@ -38,6 +43,18 @@ public class LevelEditorCanvas extends Canvas {
     private static final String MSG_BAD_DELAY = "Delay must be a positive value!";
     private static final String MSG_SOURCE_TO_WALL = "Source tile is blocked by a wall!";
     private static final String MSG_SINK_TO_WALL = "Sink tile is blocked by a wall!";
+    private static final String MSG_CHECKING = "Checking whether the map can be solved in time...";
+
+    private static final ButtonType SAVE = new ButtonType("Save", ButtonBar.ButtonData.OK_DONE);
+
+    /**
+     * Runs the solvability checks, so that a large map does not block the UI.
+     */
+    private static final ExecutorService CHECK_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        final var thread = new Thread(r, "level-check");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private GameProperties gameProp;
 
@@ -264,21 +281,64 @@ public class LevelEditorCanvas extends Canvas {
 
     /**
      * Checks the validity of the map, prompts the player for the target save directory, and saves the file.
+     *
+     * <p>
+     * Before the player is prompted, whether the map can be solved in time is checked in the background, and the result
+     * is shown in the save dialog. The map can only be saved once the check passes, and closing the dialog cancels the
+     * check.
+     * </p>
      */
     public void saveToFile() {
         // TODO
-        if(checkValidity().isEmpty()){
-            File target = getTargetSaveDirectory();
-            if(target != null) {
-                exportToFile(target.toPath());
-            }
-        }
-        else{
-            String warning = checkValidity().get();
-            Alert error = new Alert(Alert.AlertType.ERROR, warning, ButtonType.OK);
+        final var invalid = checkValidity();
+        if (invalid.isPresent()) {
+            Alert error = new Alert(Alert.AlertType.ERROR, invalid.get(), ButtonType.OK);
             error.setHeaderText("Map validity check failed");
             error.show();
+            return;
+        }
+
+        // the check works on a copy, since the map may be edited while the dialog is open
+        final var cells = new Cell[gameProp.rows][];
+        for (int row = 0; row < gameProp.rows; ++row) {
+            cells[row] = gameProp.cells[row].clone();
         }
+        final var snapshot = new GameProperties(gameProp.rows, gameProp.cols, cells, gameProp.delay);
+        final int flowDuration = FlowTimer.getDefaultFlowDuration();
+        final var check = new Task<SolvabilityCheck.Result>() {
+            @Override
+            protected SolvabilityCheck.Result call() {
+                return SolvabilityCheck.check(snapshot, flowDuration);
+            }
+        };
+
+        final var dialog = new Alert(Alert.AlertType.CONFIRMATION, MSG_CHECKING, SAVE, ButtonType.CANCEL);
+        dialog.setHeaderText("Checking solvability");
+        final var saveButton = dialog.getDialogPane().lookupButton(SAVE);
+        saveButton.setDisable(true);
+
+        check.setOnSucceeded(e -> {
+            final var result = check.getValue();
+            dialog.setHeaderText(result.isSolvable() ? "Map can be solved" : "Map cannot be solved");
+            dialog.setContentText(result.getMessage());
+            saveButton.setDisable(!result.isSolvable());
+        });
+        check.setOnFailed(e -> {
+            dialog.setHeaderText("Solvability check failed");
+            dialog.setContentText(String.valueOf(check.getException().getMessage()));
+        });
+        dialog.setOnHidden(e -> {
+            check.cancel(true);
+            if (dialog.getResult() == SAVE) {
+                File target = getTargetSaveDirectory();
+                if (target != null) {
+                    exportToFile(target.toPath());
+                }
+            }
+        });
+
+        CHECK_EXECUTOR.execute(check);
+        dialog.show();
     }
 
     /**
@@ -20,7 +20,9 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
 import models.FXGame;
+import models.GameSnapshot;
 import org.jetbrains.annotations.NotNull;
 import views.BigButton;
 import views.BigVBox;
@@ -124,14 +126,6 @@ public class GameplayPane extends GamePane{
         int col = (int)event.getX()/TILE_SIZE;
         int row = (int)event.getY()/TILE_SIZE;
         game.placePipe(row,col);
-        game.renderQueue(queueCanvas);
-        game.renderMap(gameplayCanvas);
-        updateInfoPane();
-
-        //check if winning after placing a pipe
-        if(game.hasWon()){
-            createWinPopup();
-        }
     }
 
     /**
@@ -144,15 +138,50 @@ public class GameplayPane extends GamePane{
         if(event.getCode()== KeyCode.U){
             //undo
             game.undoStep();
-            game.renderQueue(queueCanvas);
-            game.renderMap(gameplayCanvas);
-            updateInfoPane();
         }
         if(event.getCode()== KeyCode.S){
             //skip pipe
             game.skipPipe();
-            game.renderQueue(queueCanvas);
-            updateInfoPane();
+        }
+        if(event.getCode()== KeyCode.H){
+            //hint
+            showHint();
+        }
+    }
+
+    /**
+     * Highlights the best cell for the next pipe, until the map is rendered again.
+     */
+    private void showHint() {
+        final var hint = game.getHint();
+        if(hint == null){
+            return;
+        }
+        final var gc = gameplayCanvas.getGraphicsContext2D();
+        gc.setStroke(Color.GOLD);
+        gc.setLineWidth(3);
+        gc.strokeRect(hint.col * TILE_SIZE + 1.5, hint.row * TILE_SIZE + 1.5, TILE_SIZE - 3, TILE_SIZE - 3);
+    }
+
+    /**
+     * Handles a new state published by the game. This is run on the JavaFX application thread.
+     *
+     * @param state New state of the game.
+     */
+    private void onStateChanged(@NotNull GameSnapshot state) {
+        game.renderQueue(queueCanvas);
+        game.renderMap(gameplayCanvas);
+        updateInfoPane();
+
+        if(state.getError() != null){
+            createErrorPopup(state.getError());
+        }
+        else if(state.isWon()){
+            createWinPopup();
+        }
+        else if(state.isLost()){
+            game.stopCountdown();
+            createLosePopup();
         }
     }
 
@@ -162,6 +191,7 @@ public class GameplayPane extends GamePane{
     private void createWinPopup() {
         // TODO
         if(game.isRecordBeaked()){
+            new Alert(Alert.AlertType.INFORMATION, "you break the record", ButtonType.OK).showAndWait();
             recordBeakedReaction();
         }
         ButtonType back = new ButtonType("Return");
@@ -240,6 +270,18 @@ public class GameplayPane extends GamePane{
         doQuitToMenu();
     }
 
+    /**
+     * Creates a popup which tells the player the game has stopped because of an error.
+     *
+     * @param error Failure which stopped the game.
+     */
+    private void createErrorPopup(@NotNull RuntimeException error) {
+        Alert a = new Alert(Alert.AlertType.ERROR, error.toString(), new ButtonType("Return"));
+        a.setHeaderText("The game has stopped because of an error.");
+        a.showAndWait();
+        doQuitToMenu();
+    }
+
     /**
      * Creates a popup which prompts the player whether they want to quit.
      */
@@ -281,10 +323,11 @@ public class GameplayPane extends GamePane{
         game.addOnFlowHandler(()->{         //each flow happened
             //System.out.println("flow");
             game.updateState();
-            game.renderMap(gameplayCanvas);
-            if(game.hasLost()){
-                game.stopCountdown();
-                endGame();
+        });
+        game.addOnStateHandler(state -> {
+            // ignore states published by a previous game
+            if(this.game == game){
+                onStateChanged(state);
             }
         });
         game.addOnTickHandler(()->{         //each second past
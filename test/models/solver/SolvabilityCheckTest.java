@@ -0,0 +1,79 @@
+package models.solver;
+
+import io.Deserializer;
+import io.GameProperties;
+import models.pipes.Pipe;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SolvabilityCheckTest {
+
+    private static final int FLOW_DURATION = 1;
+
+    /**
+     * A straight route of 21 pipes from the source to the sink.
+     */
+    private static final String LONG_ROUTE = "WWWWWWWWWWWWWWWWWWWWWWWW\n"
+            + "W>.....................>\n"
+            + "WWWWWWWWWWWWWWWWWWWWWWWW\n";
+    /**
+     * A straight route of 3 pipes from the source to the sink.
+     */
+    private static final String SHORT_ROUTE = "WWWWWW\n"
+            + "W>...>\n"
+            + "WWWWWW\n";
+
+    /**
+     * Only every second pipe fits the route, so the player falls behind the water by one second with every pipe.
+     */
+    @NotNull
+    private static List<Pipe> alternatingPipes() {
+        final var pipes = new ArrayList<Pipe>();
+        for (int i = 0; i < 100; ++i) {
+            pipes.add(new Pipe(i % 2 == 0 ? Pipe.Shape.HORIZONTAL : Pipe.Shape.VERTICAL));
+        }
+        return pipes;
+    }
+
+    @NotNull
+    private static GameProperties level(@NotNull String rep, int delay) {
+        final int rows = (int) rep.lines().count();
+        final int cols = rep.lines().findFirst().orElseThrow().length();
+        return new GameProperties(rows, cols, Deserializer.parseString(rows, cols, rep), delay, alternatingPipes());
+    }
+
+    @Test
+    void rejectsLongRouteWithShortDelay() {
+        final var result = SolvabilityCheck.check(level(LONG_ROUTE, 2), FLOW_DURATION);
+
+        assertFalse(result.isSolvable(), result.getMessage());
+    }
+
+    @Test
+    void acceptsLongRouteWithLongDelay() {
+        final var result = SolvabilityCheck.check(level(LONG_ROUTE, 30), FLOW_DURATION);
+
+        assertTrue(result.isSolvable(), result.getMessage());
+    }
+
+    @Test
+    void acceptsShortRouteWithShortDelay() {
+        final var result = SolvabilityCheck.check(level(SHORT_ROUTE, 2), FLOW_DURATION);
+
+        assertTrue(result.isSolvable(), result.getMessage());
+    }
+
+    @Test
+    void rejectsBlockedRoute() {
+        final var blocked = LONG_ROUTE.replace(">.....", ">..W..");
+        final var result = SolvabilityCheck.check(level(blocked, 30), FLOW_DURATION);
+
+        assertFalse(result.isSolvable(), result.getMessage());
+    }
+}